@@ -58,10 +58,15 @@ dependencies {
     // RecyclerView & CardView
     implementation("androidx.recyclerview:recyclerview:1.3.2")
     implementation("androidx.cardview:cardview:1.0.0")
+    implementation("androidx.asynclayoutinflater:asynclayoutinflater:1.0.0")
 
     // Glide for images
     implementation("com.github.bumptech.glide:glide:4.16.0")
     annotationProcessor("com.github.bumptech.glide:compiler:4.16.0")
+    implementation("com.github.bumptech.glide:recyclerview-integration:4.16.0") {
+        // Uses the app's RecyclerView version
+        isTransitive = false
+    }
 
     //For Calendar
     implementation("com.kizitonwose.calendar:view:2.5.0")
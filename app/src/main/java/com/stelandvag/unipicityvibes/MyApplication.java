@@ -8,6 +8,7 @@ import android.content.res.Resources;
 
 import androidx.appcompat.app.AppCompatDelegate;
 
+import com.stelandvag.unipicityvibes.data.ReservationQueue;
 import com.stelandvag.unipicityvibes.utils.Constants;
 
 import java.util.Locale;
@@ -54,6 +55,9 @@ public class MyApplication extends Application {
 
         // Apply font size globally
         applyFontSize();
+
+        // Send bookings left over from an earlier offline session
+        ReservationQueue.getInstance(this).start();
     }
 
     private void applyFontSize() {
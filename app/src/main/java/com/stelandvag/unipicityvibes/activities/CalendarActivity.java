@@ -1,6 +1,5 @@
 package com.stelandvag.unipicityvibes.activities;
 
-import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.ImageButton;
@@ -13,11 +12,6 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
 import com.kizitonwose.calendar.core.CalendarDay;
 import com.kizitonwose.calendar.core.CalendarMonth;
 import com.kizitonwose.calendar.core.DayPosition;
@@ -26,23 +20,29 @@ import com.kizitonwose.calendar.view.MonthDayBinder;
 import com.kizitonwose.calendar.view.ViewContainer;
 import com.stelandvag.unipicityvibes.R;
 import com.stelandvag.unipicityvibes.adapters.CalendarEventAdapter;
+import com.stelandvag.unipicityvibes.data.DayIndex;
+import com.stelandvag.unipicityvibes.data.EventPipeline;
+import com.stelandvag.unipicityvibes.data.EventRepository;
 import com.stelandvag.unipicityvibes.models.Event;
-import com.stelandvag.unipicityvibes.utils.Constants;
+import com.stelandvag.unipicityvibes.models.EventDisplayModel;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.TextStyle;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 
-public class CalendarActivity extends BaseActivity implements CalendarEventAdapter.OnEventClickListener {
+public class CalendarActivity extends BaseActivity implements CalendarEventAdapter.OnEventClickListener,
+        EventRepository.Listener {
+
+    // Events of the selected day whose detail screen is warmed up ahead of a tap
+    private static final int PREFETCH_COUNT = 3;
+    // Days with this many events get the strongest dot
+    private static final int BUSY_DAY_EVENTS = 4;
 
     // UI Elements
     private ImageButton backButton, prevMonthButton, nextMonthButton;
@@ -52,17 +52,20 @@ public class CalendarActivity extends BaseActivity implements CalendarEventAdapt
     private LinearLayout emptyState;
 
     // Data
-    private List<Event> allEvents = new ArrayList<>();
-    private List<Event> eventsOnSelectedDate = new ArrayList<>();
-    private Set<LocalDate> datesWithEvents = new HashSet<>();
+    private DayIndex dayIndex = DayIndex.EMPTY;
+    private List<EventDisplayModel> eventsOnSelectedDate = new ArrayList<>();
     private LocalDate selectedDate = LocalDate.now();
     private YearMonth currentMonth = YearMonth.now();
 
     // Adapter
     private CalendarEventAdapter adapter;
 
-    // Firebase
-    private DatabaseReference eventsRef;
+    // Shared event data
+    private EventRepository eventRepository;
+    private final EventPipeline<DayIndex> dayIndexPipeline =
+            new EventPipeline<>(this::applyDayIndex);
+    private final EventPipeline<List<EventDisplayModel>> dayPipeline =
+            new EventPipeline<>(this::applyEventsOnSelectedDate);
 
     // Formatter
     private DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("MMMM yyyy", Locale.getDefault());
@@ -73,9 +76,7 @@ public class CalendarActivity extends BaseActivity implements CalendarEventAdapt
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_calendar);
 
-        // Initialize Firebase
-        eventsRef = FirebaseDatabase.getInstance(Constants.FIREBASE_DB_URL)
-                .getReference(Constants.EVENTS_REF);
+        eventRepository = EventRepository.getInstance(this);
 
         // Initialize UI
         initViews();
@@ -104,7 +105,7 @@ public class CalendarActivity extends BaseActivity implements CalendarEventAdapt
 
     private void setupRecyclerView() {
         eventsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
-        adapter = new CalendarEventAdapter(this, eventsOnSelectedDate, this);
+        adapter = new CalendarEventAdapter(this, this);
         eventsRecyclerView.setAdapter(adapter);
     }
 
@@ -129,9 +130,11 @@ public class CalendarActivity extends BaseActivity implements CalendarEventAdapt
                     // Current month
                     dayText.setVisibility(View.VISIBLE);
 
-                    // Check if this date has events
-                    if (datesWithEvents.contains(day.getDate())) {
+                    // Dot for days with events, stronger the busier the day
+                    int count = dayIndex.countOn(day.getDate());
+                    if (count > 0) {
                         eventDot.setVisibility(View.VISIBLE);
+                        eventDot.setAlpha(dotAlpha(count));
                     } else {
                         eventDot.setVisibility(View.INVISIBLE);
                     }
@@ -177,6 +180,7 @@ public class CalendarActivity extends BaseActivity implements CalendarEventAdapt
         calendarView.setMonthScrollListener(calendarMonth -> {
             currentMonth = calendarMonth.getYearMonth();
             updateMonthYearText();
+            updateEventWindow();
             return kotlin.Unit.INSTANCE;
         });
     }
@@ -190,66 +194,57 @@ public class CalendarActivity extends BaseActivity implements CalendarEventAdapt
     }
 
     private void loadEvents() {
-        eventsRef.addValueEventListener(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                allEvents.clear();
-                datesWithEvents.clear();
-
-                for (DataSnapshot eventSnapshot : snapshot.getChildren()) {
-                    Event event = eventSnapshot.getValue(Event.class);
-                    if (event != null) {
-                        event.setEventId(eventSnapshot.getKey());
-                        allEvents.add(event);
-
-                        // Add date to set
-                        Calendar cal = Calendar.getInstance();
-                        cal.setTimeInMillis(event.getDateTime());
-                        LocalDate eventDate = LocalDate.of(
-                                cal.get(Calendar.YEAR),
-                                cal.get(Calendar.MONTH) + 1,
-                                cal.get(Calendar.DAY_OF_MONTH)
-                        );
-                        datesWithEvents.add(eventDate);
-                    }
-                }
+        updateEventWindow();
+        eventRepository.addListener(this);
+    }
 
-                // Refresh calendar to show dots
-                calendarView.notifyCalendarChanged();
-                filterEventsForSelectedDate();
-            }
+    // Keep the visible month and its neighbours in memory, including past events
+    private void updateEventWindow() {
+        ZoneId zone = ZoneId.systemDefault();
+        long start = currentMonth.minusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        long end = currentMonth.plusMonths(2).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        eventRepository.setCalendarWindow(start, end);
+    }
 
-            @Override
-            public void onCancelled(@NonNull DatabaseError error) {
-                Toast.makeText(CalendarActivity.this,
-                        "Failed to load events", Toast.LENGTH_SHORT).show();
-            }
-        });
+    @Override
+    public void onEventsChanged() {
+        // Bucketed by day once per change, day taps and the day binder only look up their day.
+        // The job runs on the worker, so it walks the repository's sorted events in place.
+        ZoneId zone = ZoneId.systemDefault();
+        dayIndexPipeline.submit(generation ->
+                DayIndex.build(eventRepository.getIndex().byDate(), zone, generation));
+    }
+
+    @Override
+    public void onEventsFailed(String message) {
+        Toast.makeText(CalendarActivity.this,
+                "Failed to load events", Toast.LENGTH_SHORT).show();
+    }
+
+    private void applyDayIndex(DayIndex index) {
+        dayIndex = index;
+        // Refresh calendar to show dots
+        calendarView.notifyCalendarChanged();
+        filterEventsForSelectedDate();
     }
 
     private void filterEventsForSelectedDate() {
-        eventsOnSelectedDate.clear();
-
-        for (Event event : allEvents) {
-            Calendar cal = Calendar.getInstance();
-            cal.setTimeInMillis(event.getDateTime());
-            LocalDate eventDate = LocalDate.of(
-                    cal.get(Calendar.YEAR),
-                    cal.get(Calendar.MONTH) + 1,
-                    cal.get(Calendar.DAY_OF_MONTH)
-            );
-
-            if (eventDate.equals(selectedDate)) {
-                eventsOnSelectedDate.add(event);
-            }
-        }
+        DayIndex index = dayIndex;
+        LocalDate date = selectedDate;
+        // Already in time order, the repository keeps events sorted by date
+        dayPipeline.submit(generation -> eventRepository.getDisplayModels(index.eventsOn(date)));
+    }
 
-        // Sort by time
-        Collections.sort(eventsOnSelectedDate, (e1, e2) ->
-                Long.compare(e1.getDateTime(), e2.getDateTime()));
+    private void applyEventsOnSelectedDate(List<EventDisplayModel> events) {
+        eventsOnSelectedDate = events;
 
         // Update UI
-        adapter.notifyDataSetChanged();
+        adapter.updateList(eventsOnSelectedDate);
+
+        // A day rarely has many events, the next tap is likely one of the first
+        for (int i = 0; i < Math.min(PREFETCH_COUNT, events.size()); i++) {
+            EventDetailActivity.prefetch(this, events.get(i).event);
+        }
 
         if (eventsOnSelectedDate.isEmpty()) {
             eventsRecyclerView.setVisibility(View.GONE);
@@ -260,11 +255,23 @@ public class CalendarActivity extends BaseActivity implements CalendarEventAdapt
         }
     }
 
+    private static float dotAlpha(int count) {
+        int level = Math.min(count, BUSY_DAY_EVENTS) - 1;
+        return 0.4f + 0.6f * level / (BUSY_DAY_EVENTS - 1);
+    }
+
     @Override
     public void onEventClick(Event event) {
-        Intent intent = new Intent(this, EventDetailActivity.class);
-        intent.putExtra(EventDetailActivity.EXTRA_EVENT_ID, event.getEventId());
-        startActivity(intent);
+        startActivity(EventDetailActivity.newIntent(this, event));
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        eventRepository.removeListener(this);
+        eventRepository.clearCalendarWindow();
+        dayIndexPipeline.cancel();
+        dayPipeline.cancel();
     }
 
     // ViewContainer for calendar days
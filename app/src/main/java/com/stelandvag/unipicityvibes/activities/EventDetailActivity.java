@@ -1,5 +1,6 @@
 package com.stelandvag.unipicityvibes.activities;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
@@ -10,7 +11,10 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.IntentCompat;
 
 import com.bumptech.glide.Glide;
 import com.google.android.material.button.MaterialButton;
@@ -22,17 +26,43 @@ import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 import com.stelandvag.unipicityvibes.R;
+import com.stelandvag.unipicityvibes.data.BookingBackend;
+import com.stelandvag.unipicityvibes.data.BookingService;
+import com.stelandvag.unipicityvibes.data.EventRepository;
+import com.stelandvag.unipicityvibes.data.PendingOp;
+import com.stelandvag.unipicityvibes.data.ReservationQueue;
 import com.stelandvag.unipicityvibes.models.Event;
+import com.stelandvag.unipicityvibes.models.EventDisplayModel;
 import com.stelandvag.unipicityvibes.models.Reservation;
 import com.stelandvag.unipicityvibes.utils.Constants;
+import com.stelandvag.unipicityvibes.utils.EventImages;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
 
-public class EventDetailActivity extends BaseActivity {
+public class EventDetailActivity extends BaseActivity implements ReservationQueue.Listener {
 
     public static final String EXTRA_EVENT_ID = "event_id";
+    // Optional snapshot of the event, shown until the live copy arrives
+    public static final String EXTRA_EVENT = "event";
+
+    // Detail screen for an event the caller already has, so it opens without waiting for the network
+    public static Intent newIntent(Context context, Event event) {
+        Intent intent = new Intent(context, EventDetailActivity.class);
+        intent.putExtra(EXTRA_EVENT_ID, event.getEventId());
+        intent.putExtra(EXTRA_EVENT, event);
+        return intent;
+    }
+
+    // Downloads the image of an event the user is likely to open next into Glide's disk cache,
+    // so its detail screen doesn't wait on the network for it either
+    public static void prefetch(Context context, Event event) {
+        if (EventImages.hasImage(event)) {
+            Glide.with(context.getApplicationContext()).downloadOnly().load(event.getImageUrl()).submit();
+        }
+    }
 
     // UI Elements
     private ImageView eventImage;
@@ -46,11 +76,20 @@ public class EventDetailActivity extends BaseActivity {
     private String eventIdString;
     private Event currentEvent;
     private boolean hasBooked = false;
+    // The user's reservation once loaded, needed to cancel it
+    private Reservation myReservation;
+    // Saved in the reservation queue, not confirmed by the server yet
+    private boolean bookingPending = false;
+    private boolean cancellationPending = false;
 
     // Firebase
     private DatabaseReference eventsRef;
+    private DatabaseReference eventRef;
+    private ValueEventListener eventListener;
     private DatabaseReference reservationsRef;
+    private DatabaseReference userReservationsRef;
     private FirebaseUser currentUser;
+    private ReservationQueue reservationQueue;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -70,13 +109,18 @@ public class EventDetailActivity extends BaseActivity {
                 .getReference(Constants.EVENTS_REF);
         reservationsRef = FirebaseDatabase.getInstance(Constants.FIREBASE_DB_URL)
                 .getReference(Constants.RESERVATIONS_REF);
+        userReservationsRef = FirebaseDatabase.getInstance(Constants.FIREBASE_DB_URL)
+                .getReference(Constants.USER_RESERVATIONS_REF);
         currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        reservationQueue = ReservationQueue.getInstance(this);
+        reservationQueue.addListener(this);
 
         // Initialize UI
         initViews();
         setupListeners();
 
         // Load data
+        showCachedEvent();
         loadEventDetails();
         checkExistingReservation();
     }
@@ -110,21 +154,38 @@ public class EventDetailActivity extends BaseActivity {
 
         bookButton.setOnClickListener(v -> {
             if (hasBooked) {
-                Toast.makeText(this, "You already have a reservation!", Toast.LENGTH_SHORT).show();
+                confirmCancellation();
             } else {
                 makeReservation();
             }
         });
     }
 
+    // Render right away from the snapshot in the intent or the local cache, the live listener
+    // below then only patches what changed
+    private void showCachedEvent() {
+        Event snapshot = IntentCompat.getParcelableExtra(getIntent(), EXTRA_EVENT, Event.class);
+        if (snapshot != null) {
+            onEventLoaded(snapshot);
+            return;
+        }
+        EventRepository.getInstance(this).loadCachedEvent(eventIdString, event -> {
+            // The live copy may have won the race
+            if (event != null && currentEvent == null && !isDestroyed()) {
+                onEventLoaded(event);
+            }
+        });
+    }
+
     private void loadEventDetails() {
-        eventsRef.child(eventIdString).addValueEventListener(new ValueEventListener() {
+        eventRef = eventsRef.child(eventIdString);
+        eventListener = new ValueEventListener() {
             @Override
             public void onDataChange(@NonNull DataSnapshot snapshot) {
-                currentEvent = snapshot.getValue(Event.class);
-                if (currentEvent != null) {
-                    currentEvent.setEventId(snapshot.getKey());
-                    displayEventDetails();
+                Event event = snapshot.getValue(Event.class);
+                if (event != null) {
+                    event.setEventId(snapshot.getKey());
+                    onEventLoaded(event);
                 }
             }
 
@@ -133,31 +194,61 @@ public class EventDetailActivity extends BaseActivity {
                 Toast.makeText(EventDetailActivity.this,
                         "Failed to load event", Toast.LENGTH_SHORT).show();
             }
-        });
+        };
+        eventRef.addValueEventListener(eventListener);
     }
 
-    private void displayEventDetails() {
-        eventTitle.setText(currentEvent.getTitle());
-        categoryBadge.setText(currentEvent.getCategory().toUpperCase());
-        eventDescription.setText(currentEvent.getDescription());
-        eventVenue.setText(currentEvent.getVenue());
-        eventPrice.setText(String.format(Locale.getDefault(), "€%.0f", currentEvent.getPrice()));
-        eventSeats.setText(currentEvent.getAvailableSeats() + " left");
-        eventCapacity.setText("of " + currentEvent.getCapacity());
-        eventId.setText("Event Code: #" + currentEvent.getEventId());
-
-        // Format date and time
-        SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
-        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
-        Date dateTime = new Date(currentEvent.getDateTime());
-        eventDate.setText(dateFormat.format(dateTime));
-        eventTime.setText(timeFormat.format(dateTime));
+    private void onEventLoaded(Event event) {
+        Event previous = currentEvent;
+        currentEvent = event;
+        displayEventDetails(previous);
+    }
+
+    // Binds only the fields that differ from the previously shown event (all of them on first show),
+    // so a seat count update doesn't re-format dates or reload the image
+    private void displayEventDetails(@Nullable Event previous) {
+        Event event = currentEvent;
+        // Formatted once per change with the shared cached formatters
+        EventDisplayModel display = EventDisplayModel.of(this, event);
+        if (changed(previous, Event::getTitle)) {
+            eventTitle.setText(event.getTitle());
+        }
+        if (changed(previous, Event::getCategory)) {
+            categoryBadge.setText(display.badgeText);
+        }
+        if (changed(previous, Event::getDescription)) {
+            eventDescription.setText(event.getDescription());
+        }
+        if (changed(previous, Event::getVenue)) {
+            eventVenue.setText(event.getVenue());
+        }
+        if (changed(previous, Event::getPrice)) {
+            eventPrice.setText(display.priceText);
+        }
+        if (changed(previous, Event::getAvailableSeats) || changed(previous, Event::getCapacity)) {
+            eventSeats.setText(display.seatsText);
+        }
+        if (changed(previous, Event::getCapacity)) {
+            eventCapacity.setText("of " + event.getCapacity());
+        }
+        if (previous == null) {
+            eventId.setText("Event Code: #" + event.getEventId());
+        }
+
+        if (changed(previous, Event::getDateTime)) {
+            eventDate.setText(display.dateText);
+            eventTime.setText(display.timeText);
+        }
 
         // Load image
-        if (currentEvent.getImageUrl() != null && !currentEvent.getImageUrl().isEmpty()) {
+        if (changed(previous, Event::getImageUrl) && EventImages.hasImage(event)) {
+            // The card's thumbnail is in the memory cache, it shows until the full image is decoded
+            int[] thumbnailSize = EventImages.thumbnailSize(this);
             Glide.with(this)
-                    .load(currentEvent.getImageUrl())
+                    .load(event.getImageUrl())
                     .centerCrop()
+                    .thumbnail(EventImages.thumbnail(Glide.with(this), event.getImageUrl(),
+                            thumbnailSize[0], thumbnailSize[1]))
                     .into(eventImage);
         }
 
@@ -165,21 +256,84 @@ public class EventDetailActivity extends BaseActivity {
         updateBookButton();
     }
 
+    private boolean changed(@Nullable Event previous, Function<Event, Object> field) {
+        return previous == null || !Objects.equals(field.apply(previous), field.apply(currentEvent));
+    }
+
     private void checkExistingReservation() {
         if (currentUser == null) return;
 
-        reservationsRef.orderByChild("userId").equalTo(currentUser.getUid())
+        // A booking made offline may still be waiting in the queue
+        reservationQueue.getPending(eventIdString, currentUser.getUid(), new BookingBackend.Callback<PendingOp>() {
+            @Override
+            public void onSuccess(PendingOp op) {
+                if (op != null) {
+                    bookingPending = op.type == PendingOp.Type.BOOK;
+                    cancellationPending = op.type == PendingOp.Type.CANCEL;
+                    updateBookButton();
+                }
+            }
+
+            @Override
+            public void onFailure(String message) {}
+        });
+
+        checkReservationIndex();
+    }
+
+    // Single key lookup in the user's reservation index, independent of booking history
+    private void checkReservationIndex() {
+        userReservationsRef.child(currentUser.getUid()).child(eventIdString)
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        // A number means a booking is still in flight, only an id is a reservation
+                        if (snapshot.getValue() instanceof String) {
+                            hasBooked = true;
+                            updateBookButton();
+                            loadReservation((String) snapshot.getValue());
+                        } else if (snapshot.getValue() == null) {
+                            indexLegacyReservations();
+                        }
+                    }
+
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError error) {}
+                });
+    }
+
+    // Reservations made before the index existed have no entry. The first miss for a user looks
+    // them up the old way, once, and writes their index entries, later misses are trusted.
+    private void indexLegacyReservations() {
+        SharedPreferences prefs = getSharedPreferences(Constants.PREFS_NAME, MODE_PRIVATE);
+        String userId = currentUser.getUid();
+        String prefKey = Constants.PREF_RESERVATIONS_INDEXED + userId;
+        if (prefs.getBoolean(prefKey, false)) return;
+
+        reservationsRef.orderByChild("userId").equalTo(userId)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        Map<String, Object> updates = new HashMap<>();
                         for (DataSnapshot resSnapshot : snapshot.getChildren()) {
                             Reservation res = resSnapshot.getValue(Reservation.class);
-                            if (res != null && res.getEventId().equals(eventIdString)) {
+                            if (res == null || res.getEventId() == null) continue;
+                            updates.put(Constants.USER_RESERVATIONS_REF + "/" + userId + "/"
+                                    + res.getEventId(), resSnapshot.getKey());
+                            if (res.getEventId().equals(eventIdString)) {
+                                res.setReservationId(resSnapshot.getKey());
                                 hasBooked = true;
+                                myReservation = res;
                                 updateBookButton();
-                                break;
                             }
                         }
+                        if (updates.isEmpty()) {
+                            prefs.edit().putBoolean(prefKey, true).apply();
+                            return;
+                        }
+                        FirebaseDatabase.getInstance(Constants.FIREBASE_DB_URL).getReference()
+                                .updateChildren(updates)
+                                .addOnSuccessListener(aVoid -> prefs.edit().putBoolean(prefKey, true).apply());
                     }
 
                     @Override
@@ -187,6 +341,23 @@ public class EventDetailActivity extends BaseActivity {
                 });
     }
 
+    // The full reservation, only needed if the user cancels it
+    private void loadReservation(String reservationId) {
+        reservationsRef.child(reservationId).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                Reservation reservation = snapshot.getValue(Reservation.class);
+                if (reservation != null && hasBooked) {
+                    reservation.setReservationId(snapshot.getKey());
+                    myReservation = reservation;
+                }
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {}
+        });
+    }
+
     private void updateBookButton() {
         if (currentEvent == null) return;
 
@@ -196,8 +367,15 @@ public class EventDetailActivity extends BaseActivity {
         if (isPastEvent) {
             bookButton.setText(getResources().getString(R.string.event_ended));
             bookButton.setEnabled(false);
+        } else if (cancellationPending) {
+            bookButton.setText(getResources().getString(R.string.booking_pending));
+            bookButton.setEnabled(false);
         } else if (hasBooked) {
+            // Tapping it offers to cancel
             bookButton.setText(getResources().getString(R.string.youre_going));
+            bookButton.setEnabled(true);
+        } else if (bookingPending) {
+            bookButton.setText(getResources().getString(R.string.booking_pending));
             bookButton.setEnabled(false);
         } else if (currentEvent.getAvailableSeats() <= 0) {
             bookButton.setText(getResources().getString(R.string.sold_out));
@@ -233,20 +411,100 @@ public class EventDetailActivity extends BaseActivity {
                 System.currentTimeMillis()
         );
 
-        // Save reservation
-        reservationsRef.child(reservationId).setValue(reservation)
-                .addOnSuccessListener(aVoid -> {
-                    // Update booked seats
-                    int newBookedSeats = currentEvent.getBookedSeats() + 1;
-                    eventsRef.child(eventIdString).child("bookedSeats").setValue(newBookedSeats);
+        // Logged on the device first, the queue takes the seat with a server transaction
+        // as soon as it is online, so the tap works without a connection
+        bookButton.setEnabled(false);
+        reservationQueue.book(currentEvent, reservation, () -> {
+            bookingPending = true;
+            updateBookButton();
+            if (!reservationQueue.isOnline()) {
+                Toast.makeText(this, "Saved! We'll book your seat when you're back online",
+                        Toast.LENGTH_LONG).show();
+            }
+        });
+    }
 
-                    hasBooked = true;
-                    updateBookButton();
-                    Toast.makeText(this, "Reservation confirmed! 🎉", Toast.LENGTH_SHORT).show();
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(this, "Failed to make reservation", Toast.LENGTH_SHORT).show();
-                });
+    private void confirmCancellation() {
+        if (myReservation == null) {
+            // Still loading
+            Toast.makeText(this, "You already have a reservation!", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Cancel reservation")
+                .setMessage("Give your seat back?")
+                .setPositiveButton("Yes", (dialog, which) -> cancelReservation())
+                .setNegativeButton("No", null)
+                .show();
+    }
+
+    // Goes through the reservation queue like a booking, so it also works offline
+    private void cancelReservation() {
+        Reservation reservation = myReservation;
+        bookButton.setEnabled(false);
+        reservationQueue.cancel(currentEvent, reservation, () -> {
+            hasBooked = false;
+            myReservation = null;
+            cancellationPending = true;
+            updateBookButton();
+            if (!reservationQueue.isOnline()) {
+                Toast.makeText(this, "Saved! We'll cancel when you're back online",
+                        Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    @Override
+    public boolean onOpResolved(PendingOp op, BookingService.Result result) {
+        if (currentUser == null || !op.eventId.equals(eventIdString)
+                || !op.userId.equals(currentUser.getUid())) {
+            return false;
+        }
+
+        if (op.type == PendingOp.Type.CANCEL) {
+            cancellationPending = false;
+            if (result == BookingService.Result.CANCELLED) {
+                Toast.makeText(this, "Reservation cancelled", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, "Failed to cancel reservation", Toast.LENGTH_SHORT).show();
+                checkReservationIndex();
+            }
+            updateBookButton();
+            return true;
+        }
+
+        bookingPending = false;
+        switch (result) {
+            case BOOKED:
+                hasBooked = true;
+                loadReservation(op.reservationId);
+                Toast.makeText(this, "Reservation confirmed! 🎉", Toast.LENGTH_SHORT).show();
+                break;
+            case ALREADY_BOOKED:
+                hasBooked = true;
+                checkReservationIndex();
+                Toast.makeText(this, "You already have a reservation!", Toast.LENGTH_SHORT).show();
+                break;
+            case SOLD_OUT:
+                Toast.makeText(this, "No seats available", Toast.LENGTH_SHORT).show();
+                break;
+            default:
+                Toast.makeText(this, "Failed to make reservation", Toast.LENGTH_SHORT).show();
+                break;
+        }
+        updateBookButton();
+        return true;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (reservationQueue != null) {
+            reservationQueue.removeListener(this);
+        }
+        if (eventListener != null) {
+            eventRef.removeEventListener(eventListener);
+        }
     }
 
     private void openInMaps(double lat, double lng, String label) {
@@ -2,10 +2,13 @@ package com.stelandvag.unipicityvibes.activities;
 
 import android.Manifest;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.View;
@@ -23,21 +26,22 @@ import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
 import com.stelandvag.unipicityvibes.R;
+import com.stelandvag.unipicityvibes.adapters.CardViewCache;
 import com.stelandvag.unipicityvibes.adapters.EventAdapter;
+import com.stelandvag.unipicityvibes.data.EventIndex;
+import com.stelandvag.unipicityvibes.data.EventPipeline;
+import com.stelandvag.unipicityvibes.data.EventRepository;
+import com.stelandvag.unipicityvibes.data.NearbyEvent;
 import com.stelandvag.unipicityvibes.models.Event;
+import com.stelandvag.unipicityvibes.models.EventDisplayModel;
 import com.stelandvag.unipicityvibes.utils.Constants;
-import com.stelandvag.unipicityvibes.utils.NotificationHelper;
+import com.stelandvag.unipicityvibes.utils.GeofenceManager;
+import com.stelandvag.unipicityvibes.utils.LocationTracker;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -45,9 +49,22 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-public class MainActivity extends BaseActivity implements EventAdapter.OnEventClickListener {
+public class MainActivity extends BaseActivity implements EventAdapter.OnEventClickListener,
+        EventRepository.Listener, LocationTracker.Listener {
 
     private static final int LOCATION_PERMISSION_REQUEST = 1001;
+    private static final int BACKGROUND_LOCATION_REQUEST = 1003;
+    private static final int TRENDING_LIMIT = 10;
+    // Cards built per row, a horizontal row is rarely scrolled further
+    private static final int ROW_LIMIT = 50;
+    private static final int NEAR_YOU_RADIUS_METERS = 5000;
+    private static final long SEARCH_DEBOUNCE_MS = 150;
+    // Cards per row whose detail screen is warmed up ahead of a tap
+    private static final int PREFETCH_COUNT = 3;
+    // Cards past the visible ones whose thumbnails load ahead of the scroll
+    private static final int PRELOAD_AHEAD = 4;
+    // Card holders kept for reuse across the three rows
+    private static final int CARD_POOL_SIZE = 15;
 
     // UI Elements
     private ImageButton settingsButton;
@@ -58,25 +75,29 @@ public class MainActivity extends BaseActivity implements EventAdapter.OnEventCl
     private TextView locationPermissionText;
     private RecyclerView allEventsRecyclerView;
     private EventAdapter allEventsAdapter;
-    private List<Event> allEventsList = new ArrayList<>();
 
-    // Notificatioans
-    private NotificationHelper notificationHelper;
+    // Nearby notifications come from OS geofences, planned around the user
+    private GeofenceManager geofenceManager;
 
     // Adapters
     private EventAdapter trendingAdapter, nearYouAdapter;
+    private CardViewCache cardViewCache;
+    private boolean reportedFullyDrawn = false;
 
-    // Data in array
-    private List<Event> allEvents = new ArrayList<>();
-    private List<Event> trendingEvents = new ArrayList<>();
-    private List<Event> nearYouEvents = new ArrayList<>();
+    private String searchQuery = "";
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::refreshLists;
 
-    // Firebase
-    private DatabaseReference eventsRef;
+    // Shared event data
+    private EventRepository eventRepository;
+    private final EventPipeline<HomeFeed> feedPipeline = new EventPipeline<>(this::applyFeed);
+    private final Set<String> prefetchedIds = new HashSet<>();
 
     // Location
-    private FusedLocationProviderClient fusedLocationClient;
+    private LocationTracker locationTracker;
     private Location currentLocation;
+    // Asked once per screen, so a denial is not followed by the same dialog on every resume
+    private boolean locationPermissionRequested = false;
 
     // Filter
     private Set<String> selectedCategories = new HashSet<>();
@@ -86,10 +107,10 @@ public class MainActivity extends BaseActivity implements EventAdapter.OnEventCl
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        eventsRef = FirebaseDatabase.getInstance(Constants.FIREBASE_DB_URL).getReference(Constants.EVENTS_REF);
+        eventRepository = EventRepository.getInstance(this);
 
         // Initialize Location
-        fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
+        locationTracker = LocationTracker.getInstance(this);
 
         // Initialize UI
         initViews();
@@ -99,13 +120,12 @@ public class MainActivity extends BaseActivity implements EventAdapter.OnEventCl
         //Initialize filters
         initFilters();
 
-        //Load data
-        loadEvents();
-        onResume();
-
         // Initialize Notification
-        notificationHelper = new NotificationHelper(this);
+        geofenceManager = GeofenceManager.getInstance(this);
         checkNotificationPermission();
+
+        //Load data
+        loadEvents();
     }
 
     private void initViews() {
@@ -132,23 +152,34 @@ public class MainActivity extends BaseActivity implements EventAdapter.OnEventCl
     }
 
     private void setupRecyclerViews() {
+        // The three rows show the same card, so they share one pool of card holders and
+        // one set of cards inflated in the background while the events load
+        RecyclerView.RecycledViewPool cardPool = new RecyclerView.RecycledViewPool();
+        cardPool.setMaxRecycledViews(0, CARD_POOL_SIZE);
+        int visibleCards = getResources().getDisplayMetrics().widthPixels
+                / getResources().getDimensionPixelSize(R.dimen.event_card_width) + 1;
+        cardViewCache = new CardViewCache(this, R.layout.item_event_card);
+        cardViewCache.warm(trendingRecyclerView, visibleCards * 3);
+
         // Trending (Horizontal scroll)
-        trendingRecyclerView.setLayoutManager(
-                new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL, false));
-        trendingAdapter = new EventAdapter(this, trendingEvents, this);
-        trendingRecyclerView.setAdapter(trendingAdapter);
+        trendingAdapter = setupCarousel(trendingRecyclerView, cardPool);
 
         // Near You (Horizontal scroll
-        nearYouRecyclerView.setLayoutManager(
-                new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL, false));
-        nearYouAdapter = new EventAdapter(this, nearYouEvents, this);
-        nearYouRecyclerView.setAdapter(nearYouAdapter);
+        nearYouAdapter = setupCarousel(nearYouRecyclerView, cardPool);
 
         // All Events - Horizontal scroll
-        allEventsRecyclerView.setLayoutManager(
+        allEventsAdapter = setupCarousel(allEventsRecyclerView, cardPool);
+    }
+
+    private EventAdapter setupCarousel(RecyclerView recyclerView, RecyclerView.RecycledViewPool cardPool) {
+        recyclerView.setLayoutManager(
                 new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL, false));
-        allEventsAdapter = new EventAdapter(this, allEventsList, this);
-        allEventsRecyclerView.setAdapter(allEventsAdapter);
+        recyclerView.setRecycledViewPool(cardPool);
+        EventAdapter adapter = new EventAdapter(this, this);
+        adapter.setViewCache(cardViewCache);
+        recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(adapter.createPreloader(PRELOAD_AHEAD));
+        return adapter;
     }
 
     private void setupListeners() {
@@ -206,61 +237,68 @@ public class MainActivity extends BaseActivity implements EventAdapter.OnEventCl
     }
 
     private void loadEvents() {
-        eventsRef.addValueEventListener(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                allEvents.clear();
-                for (DataSnapshot eventSnapshot : snapshot.getChildren()) {
-                    Event event = eventSnapshot.getValue(Event.class);
-                    if (event != null) {
-                        event.setEventId(eventSnapshot.getKey());
-                        allEvents.add(event);
-                    }
-                }
-                updateTrendingList();
-                updateNearYouList();
-                updateAllEventsList();
-            }
+        eventRepository.addListener(this);
+    }
 
-            @Override
-            public void onCancelled(@NonNull DatabaseError error) {
-                Toast.makeText(MainActivity.this,
-                        "Failed to load events: " + error.getMessage(),
-                        Toast.LENGTH_SHORT).show();
-            }
-        });
+    @Override
+    public void onEventsChanged() {
+        refreshLists();
     }
 
-    private void updateTrendingList() {
-        trendingEvents.clear();
+    @Override
+    public void onEventsFailed(String message) {
+        Toast.makeText(MainActivity.this,
+                "Failed to load events: " + message,
+                Toast.LENGTH_SHORT).show();
+    }
 
+    // Rebuild the three rows on the worker thread, a newer call cancels an unfinished one
+    private void refreshLists() {
+        // Copy the inputs, the job must not touch activity state
+        Set<String> categories = new HashSet<>(selectedCategories);
+        Location location = currentLocation == null ? null : new Location(currentLocation);
+        String query = searchQuery;
         long now = System.currentTimeMillis();
 
-        // Filter by selected categories AND only future events
-        List<Event> filtered = new ArrayList<>();
-        for (Event event : allEvents) {
-            if (selectedCategories.contains(event.getCategory()) && event.getDateTime() >= now) {
-                filtered.add(event);
+        feedPipeline.submit(generation -> {
+            HomeFeed feed = new HomeFeed();
+            feed.hasLocation = location != null;
+            feed.nearby = buildNearYouList(categories, location, now, generation);
+
+            if (query.isEmpty()) {
+                // Answered by walking the pre-sorted index, no sorting here
+                EventIndex index = eventRepository.getIndex();
+                feed.trending = eventRepository.getDisplayModels(
+                        index.trending(categories, now, TRENDING_LIMIT));
+                feed.nearYou = eventRepository.getDisplayModels(eventsOf(feed.nearby));
+                feed.all = eventRepository.getDisplayModels(
+                        index.upcoming(categories, now, ROW_LIMIT));
+            } else {
+                // Ranked matches from the inverted index, Near You keeps its distance order
+                List<Event> matches = eventRepository.getSearchIndex().search(query, ROW_LIMIT);
+                Set<Event> matchSet = new HashSet<>(matches);
+                List<Event> nearYou = new ArrayList<>();
+                for (NearbyEvent item : feed.nearby) {
+                    if (nearYou.size() == ROW_LIMIT) break;
+                    if (matchSet.contains(item.event)) {
+                        nearYou.add(item.event);
+                    }
+                }
+                feed.trending = eventRepository.getDisplayModels(matches);
+                feed.nearYou = eventRepository.getDisplayModels(nearYou);
+                feed.all = feed.trending;
             }
-        }
-
-        // Sort by booked seats (most popular first)
-        Collections.sort(filtered, (e1, e2) ->
-                Integer.compare(e2.getBookedSeats(), e1.getBookedSeats()));
-
-        // Take top 10
-        int limit = Math.min(filtered.size(), 10);
-        for (int i = 0; i < limit; i++) {
-            trendingEvents.add(filtered.get(i));
-        }
-
-        trendingAdapter.notifyDataSetChanged();
+            return feed;
+        });
     }
 
-    private void updateNearYouList() {
-        nearYouEvents.clear();
+    private void applyFeed(HomeFeed feed) {
+        trendingAdapter.updateList(feed.trending);
+        allEventsAdapter.updateList(feed.all, this::onAllEventsCommitted);
+        prefetchDetails(feed.trending);
 
-        if (currentLocation == null) {
+        if (!feed.hasLocation) {
+            nearYouAdapter.updateList(Collections.emptyList());
             locationPermissionText.setVisibility(View.VISIBLE);
             nearYouRecyclerView.setVisibility(View.GONE);
             return;
@@ -268,99 +306,78 @@ public class MainActivity extends BaseActivity implements EventAdapter.OnEventCl
 
         locationPermissionText.setVisibility(View.GONE);
         nearYouRecyclerView.setVisibility(View.VISIBLE);
+        nearYouAdapter.updateList(feed.nearYou);
+        prefetchDetails(feed.nearYou);
 
-        long now = System.currentTimeMillis();
-
-        // Calculate distance and filter nearby events
-        for (Event event : allEvents) {
-            // Check if category is selected
-            if (!selectedCategories.contains(event.getCategory())) {
-                continue;
-            }
-
-            // Skip past events
-            if (event.getDateTime() < now) {
-                continue;
-            }
+        if (feed.nearYou.isEmpty()) {
+            locationPermissionText.setText(getString(R.string.no_events_nearby));
+            locationPermissionText.setVisibility(View.VISIBLE);
+        }
+    }
 
-            float[] results = new float[1];
-            Location.distanceBetween(
-                    currentLocation.getLatitude(),
-                    currentLocation.getLongitude(),
-                    event.getLatitude(),
-                    event.getLongitude(),
-                    results
-            );
-            float distanceInMeters = results[0];
-
-            // Add events within 5km for "Near You" section
-            if (distanceInMeters <= 5000) {
-                nearYouEvents.add(event);
-            }
+    // First frame with real cards, logged as "Fully drawn" to measure startup. The rows took
+    // their pre-inflated cards in that layout, the unused ones are dropped then.
+    private void onAllEventsCommitted() {
+        if (!reportedFullyDrawn && allEventsAdapter.getItemCount() > 0) {
+            reportedFullyDrawn = true;
+            allEventsRecyclerView.post(() -> {
+                reportFullyDrawn();
+                cardViewCache.release();
+            });
+        }
+    }
 
-            // Trigger notification if within proximity radius (200 meters)
-            if (distanceInMeters <= Constants.PROXIMITY_RADIUS_METERS) {
-                notificationHelper.showNearbyEventNotification(event, distanceInMeters);
+    // The first cards of a row are the likeliest taps, warm their detail screens once
+    private void prefetchDetails(List<EventDisplayModel> row) {
+        for (int i = 0; i < Math.min(PREFETCH_COUNT, row.size()); i++) {
+            Event event = row.get(i).event;
+            if (prefetchedIds.add(event.getEventId())) {
+                EventDetailActivity.prefetch(this, event);
             }
         }
+    }
 
-        // Sort by distance (closest first)
-        Collections.sort(nearYouEvents, (e1, e2) -> {
-            float[] r1 = new float[1];
-            float[] r2 = new float[1];
-            Location.distanceBetween(currentLocation.getLatitude(), currentLocation.getLongitude(),
-                    e1.getLatitude(), e1.getLongitude(), r1);
-            Location.distanceBetween(currentLocation.getLatitude(), currentLocation.getLongitude(),
-                    e2.getLatitude(), e2.getLongitude(), r2);
-            return Float.compare(r1[0], r2[0]);
-        });
+    // Worker thread
+    private List<NearbyEvent> buildNearYouList(Set<String> categories, Location location, long now,
+                                               EventPipeline.Generation generation) {
+        if (location == null) return Collections.emptyList();
 
-        nearYouAdapter.notifyDataSetChanged();
+        // Only events in the grid cells around the user are visited, each distance computed once
+        List<NearbyEvent> inRadius = eventRepository.getSpatialIndex().withinRadius(
+                location.getLatitude(), location.getLongitude(), NEAR_YOU_RADIUS_METERS);
 
-        if (nearYouEvents.isEmpty()) {
-            locationPermissionText.setText(getString(R.string.no_events_nearby));
-            locationPermissionText.setVisibility(View.VISIBLE);
-        }
-    }
+        List<NearbyEvent> nearby = new ArrayList<>();
+        for (NearbyEvent item : inRadius) {
+            if (generation.isCancelled()) return Collections.emptyList();
 
-    private void filterEvents(String query) {
-        if (query.isEmpty()) {
-            updateTrendingList();
-            updateNearYouList();
-            updateAllEventsList();
-            return;
+            // Selected categories and future events only
+            if (categories.contains(item.event.getCategory()) && item.event.getDateTime() >= now) {
+                nearby.add(item);
+            }
         }
 
-        String lowerQuery = query.toLowerCase();
+        // Already sorted by distance (closest first)
+        return Collections.unmodifiableList(nearby);
+    }
 
-        // Filter trending
-        trendingEvents.clear();
-        for (Event event : allEvents) {
-            if (event.getTitle().toLowerCase().contains(lowerQuery)) {
-                trendingEvents.add(event);
-            }
+    // The closest ROW_LIMIT events
+    private static List<Event> eventsOf(List<NearbyEvent> nearby) {
+        List<Event> events = new ArrayList<>(Math.min(nearby.size(), ROW_LIMIT));
+        for (int i = 0; i < nearby.size() && i < ROW_LIMIT; i++) {
+            events.add(nearby.get(i).event);
         }
-        trendingAdapter.notifyDataSetChanged();
+        return Collections.unmodifiableList(events);
+    }
 
-        // Filter near you
-        List<Event> filteredNearYou = new ArrayList<>();
-        for (Event event : nearYouEvents) {
-            if (event.getTitle().toLowerCase().contains(lowerQuery)) {
-                filteredNearYou.add(event);
-            }
-        }
-        nearYouEvents.clear();
-        nearYouEvents.addAll(filteredNearYou);
-        nearYouAdapter.notifyDataSetChanged();
-
-        // Filter all events
-        allEventsList.clear();
-        for (Event event : allEvents) {
-            if (event.getTitle().toLowerCase().contains(lowerQuery)) {
-                allEventsList.add(event);
-            }
+    // Typing is debounced, only the last query of a burst is searched
+    private void filterEvents(String query) {
+        searchQuery = query.trim();
+        searchHandler.removeCallbacks(searchRunnable);
+        if (searchQuery.isEmpty()) {
+            refreshLists();
+        } else {
+            searchHandler.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MS);
         }
-        allEventsAdapter.notifyDataSetChanged();
     }
 
     private void showFilterDialog() {
@@ -411,51 +428,68 @@ public class MainActivity extends BaseActivity implements EventAdapter.OnEventCl
     }
 
     private void applyFilters() {
-        updateTrendingList();
-        updateNearYouList();
-        updateAllEventsList();
+        refreshLists();
     }
 
     private void checkLocationPermission() {
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
                 == PackageManager.PERMISSION_GRANTED) {
-            getCurrentLocation();
-        } else {
+            startLocationUpdates();
+        } else if (!locationPermissionRequested) {
+            locationPermissionRequested = true;
             ActivityCompat.requestPermissions(this,
                     new String[]{Manifest.permission.ACCESS_FINE_LOCATION},
                     LOCATION_PERMISSION_REQUEST);
         }
     }
 
-    private void getCurrentLocation() {
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
-                != PackageManager.PERMISSION_GRANTED) {
+    // Near You lists events kilometres around, a block-level fix is plenty and spares the GPS
+    private void startLocationUpdates() {
+        locationTracker.addListener(this, Priority.PRIORITY_BALANCED_POWER_ACCURACY);
+        checkBackgroundLocationPermission();
+    }
+
+    // Since Android 10 geofences only trigger while the app is closed with "Allow all the time",
+    // which has to be asked for separately, after the foreground permission. Asked once, with
+    // the reason first, and only while nearby notifications are on.
+    private void checkBackgroundLocationPermission() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return;
+        SharedPreferences prefs = getSharedPreferences(Constants.PREFS_NAME, MODE_PRIVATE);
+        if (!prefs.getBoolean(Constants.PREF_NOTIFICATIONS_ENABLED, true)
+                || prefs.getBoolean(Constants.PREF_BACKGROUND_LOCATION_ASKED, false)
+                || ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_BACKGROUND_LOCATION)
+                == PackageManager.PERMISSION_GRANTED) {
             return;
         }
+        prefs.edit().putBoolean(Constants.PREF_BACKGROUND_LOCATION_ASKED, true).apply();
 
-        // Request new location
-        fusedLocationClient.getCurrentLocation(
-                com.google.android.gms.location.Priority.PRIORITY_HIGH_ACCURACY,
-                null
-        ).addOnSuccessListener(this, location -> {
-            if (location != null) {
-                currentLocation = location;
-                updateNearYouList();
-            } else {
-                // Fallback to last known location
-                fusedLocationClient.getLastLocation()
-                        .addOnSuccessListener(this, lastLocation -> {
-                            if (lastLocation != null) {
-                                currentLocation = lastLocation;
-                                updateNearYouList();
-                            } else {
-                                locationPermissionText.setText(getString(R.string.enable_location));
-                                locationPermissionText.setVisibility(View.VISIBLE);
-                                nearYouRecyclerView.setVisibility(View.GONE);
-                            }
-                        });
-            }
-        });
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.background_location_title)
+                .setMessage(R.string.background_location_message)
+                .setPositiveButton(R.string.background_location_allow, (dialog, which) ->
+                        ActivityCompat.requestPermissions(this,
+                                new String[]{Manifest.permission.ACCESS_BACKGROUND_LOCATION},
+                                BACKGROUND_LOCATION_REQUEST))
+                .setNegativeButton(R.string.not_now, null)
+                .show();
+    }
+
+    // Only called for a first fix or a significant move, small jitter never rebuilds the rows
+    @Override
+    public void onLocationChanged(Location location) {
+        currentLocation = location;
+        eventRepository.loadNearby(location.getLatitude(), location.getLongitude(),
+                NEAR_YOU_RADIUS_METERS);
+        geofenceManager.onLocation(location);
+        refreshLists();
+    }
+
+    @Override
+    public void onLocationUnavailable() {
+        if (currentLocation != null) return;
+        locationPermissionText.setText(getString(R.string.enable_location));
+        locationPermissionText.setVisibility(View.VISIBLE);
+        nearYouRecyclerView.setVisibility(View.GONE);
     }
 
     @Override
@@ -464,40 +498,21 @@ public class MainActivity extends BaseActivity implements EventAdapter.OnEventCl
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == LOCATION_PERMISSION_REQUEST) {
             if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-                getCurrentLocation();
+                startLocationUpdates();
             } else {
                 locationPermissionText.setText("Location permission denied");
                 locationPermissionText.setVisibility(View.VISIBLE);
             }
+        } else if (requestCode == BACKGROUND_LOCATION_REQUEST && currentLocation != null
+                && grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            // The geofences could not be registered without it, plan them now
+            geofenceManager.onLocation(currentLocation);
         }
     }
 
     @Override
     public void onEventClick(Event event) {
-        Intent intent = new Intent(this, EventDetailActivity.class);
-        intent.putExtra(EventDetailActivity.EXTRA_EVENT_ID, event.getEventId());
-        startActivity(intent);
-    }
-
-    private void updateAllEventsList() {
-        allEventsList.clear();
-
-        // Filter by selected categories and sort by date (upcoming first)
-        List<Event> filtered = new ArrayList<>();
-        long now = System.currentTimeMillis();
-
-        for (Event event : allEvents) {
-            if (selectedCategories.contains(event.getCategory()) && event.getDateTime() >= now) {
-                filtered.add(event);
-            }
-        }
-
-        // Sort by date (soonest first)
-        Collections.sort(filtered, (e1, e2) ->
-                Long.compare(e1.getDateTime(), e2.getDateTime()));
-
-        allEventsList.addAll(filtered);
-        allEventsAdapter.notifyDataSetChanged();
+        startActivity(EventDetailActivity.newIntent(this, event));
     }
 
     // Ask for permissions
@@ -519,4 +534,29 @@ public class MainActivity extends BaseActivity implements EventAdapter.OnEventCl
         super.onResume();
         checkLocationPermission();
     }
-}
\ No newline at end of file
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // No updates while the screen is not visible
+        locationTracker.removeListener(this);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        eventRepository.removeListener(this);
+        searchHandler.removeCallbacks(searchRunnable);
+        feedPipeline.cancel();
+        cardViewCache.release();
+    }
+
+    // Finished, immutable rows produced by the worker thread
+    private static class HomeFeed {
+        List<EventDisplayModel> trending;
+        List<EventDisplayModel> nearYou;
+        List<EventDisplayModel> all;
+        List<NearbyEvent> nearby;
+        boolean hasLocation;
+    }
+}
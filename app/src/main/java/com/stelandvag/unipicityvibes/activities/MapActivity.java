@@ -1,6 +1,5 @@
 package com.stelandvag.unipicityvibes.activities;
 
-import android.content.Intent;
 import android.os.Bundle;
 import android.widget.ImageButton;
 import android.widget.Toast;
@@ -12,46 +11,46 @@ import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
-import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
-import com.google.android.gms.maps.model.Marker;
-import com.google.android.gms.maps.model.MarkerOptions;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
 import com.stelandvag.unipicityvibes.R;
+import com.stelandvag.unipicityvibes.adapters.MarkerAdapter;
+import com.stelandvag.unipicityvibes.data.EventPipeline;
+import com.stelandvag.unipicityvibes.data.EventRepository;
+import com.stelandvag.unipicityvibes.data.MarkerClusterer;
 import com.stelandvag.unipicityvibes.models.Event;
 import com.stelandvag.unipicityvibes.utils.Constants;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-public class MapActivity extends BaseActivity implements OnMapReadyCallback {
+public class MapActivity extends BaseActivity implements OnMapReadyCallback,
+        EventRepository.Listener {
 
     // UI Elements
     private ImageButton backButton;
     private GoogleMap mMap;
 
     // Data
-    private List<Event> allEvents = new ArrayList<>();
-    private Map<String, Event> markerEventMap = new HashMap<>();
+    private boolean cameraPlaced = false;
 
-    // Firebase
-    private DatabaseReference eventsRef;
+    // Markers near the visible area, updated in small batches per frame
+    private MarkerAdapter markerAdapter;
+
+    // Clustering and marker building run on the repository worker, next to the spatial index
+    private final EventPipeline<List<MarkerAdapter.MarkerSpec>> clusterPipeline =
+            new EventPipeline<>(specs -> markerAdapter.submit(specs));
+    // Bounds of the events in memory, for the first camera position
+    private final EventPipeline<LatLngBounds> boundsPipeline = new EventPipeline<>(this::placeCamera);
+
+    // Shared event data
+    private EventRepository eventRepository;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_map);
 
-        // Initialize Firebase
-        eventsRef = FirebaseDatabase.getInstance(Constants.FIREBASE_DB_URL)
-                .getReference(Constants.EVENTS_REF);
+        eventRepository = EventRepository.getInstance(this);
 
         // Initialize UI
         backButton = findViewById(R.id.backButton);
@@ -68,113 +67,144 @@ public class MapActivity extends BaseActivity implements OnMapReadyCallback {
     @Override
     public void onMapReady(@NonNull GoogleMap googleMap) {
         mMap = googleMap;
+        markerAdapter = new MarkerAdapter(this, googleMap);
 
         // Setup map UI settings
         mMap.getUiSettings().setZoomControlsEnabled(true);
         mMap.getUiSettings().setMapToolbarEnabled(true);
 
+        // Re-cluster once the camera settles, not on every frame of a gesture
+        mMap.setOnCameraIdleListener(this::refreshMarkers);
+
         // Setup marker click listener
         mMap.setOnMarkerClickListener(marker -> {
+            MarkerClusterer.Cluster cluster = MarkerAdapter.clusterOf(marker);
+            if (cluster == null) return false;
+
+            if (!cluster.isSingle()) {
+                zoomInto(cluster);
+                return true;
+            }
             marker.showInfoWindow();
+            // Opening the info window usually leads to the detail screen
+            EventDetailActivity.prefetch(this, cluster.first());
             return true;
         });
 
         // Setup info window click listener
         mMap.setOnInfoWindowClickListener(marker -> {
-            Event event = markerEventMap.get(marker.getId());
-            if (event != null) {
-                Intent intent = new Intent(MapActivity.this, EventDetailActivity.class);
-                intent.putExtra(EventDetailActivity.EXTRA_EVENT_ID, event.getEventId());
-                startActivity(intent);
+            MarkerClusterer.Cluster cluster = MarkerAdapter.clusterOf(marker);
+            if (cluster != null && cluster.isSingle()) {
+                startActivity(EventDetailActivity.newIntent(MapActivity.this, cluster.first()));
             }
         });
 
+        // Without events in memory, open on the city and load the tiles it shows
+        if (eventRepository.getEventCount() == 0) {
+            cameraPlaced = true;
+            mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(
+                    new LatLng(Constants.DEFAULT_MAP_LAT, Constants.DEFAULT_MAP_LNG),
+                    Constants.DEFAULT_MAP_ZOOM));
+        }
+
         // Load events
         loadEvents();
     }
 
+    // The map does not subscribe to the whole upcoming window, it loads the tiles it shows
     private void loadEvents() {
-        eventsRef.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                allEvents.clear();
-                for (DataSnapshot eventSnapshot : snapshot.getChildren()) {
-                    Event event = eventSnapshot.getValue(Event.class);
-                    if (event != null) {
-                        event.setEventId(eventSnapshot.getKey());
-                        allEvents.add(event);
-                    }
-                }
-                addMarkersToMap();
-            }
-
-            @Override
-            public void onCancelled(@NonNull DatabaseError error) {
-                Toast.makeText(MapActivity.this,
-                        "Failed to load events", Toast.LENGTH_SHORT).show();
-            }
-        });
+        eventRepository.addListener(this, false);
     }
 
-    private void addMarkersToMap() {
-        if (mMap == null || allEvents.isEmpty()) return;
-
-        LatLngBounds.Builder boundsBuilder = new LatLngBounds.Builder();
-
-        for (Event event : allEvents) {
-            LatLng position = new LatLng(event.getLatitude(), event.getLongitude());
-
-            // Choose marker color based on category
-            float markerColor = getMarkerColor(event.getCategory());
-
-            MarkerOptions markerOptions = new MarkerOptions()
-                    .position(position)
-                    .title(event.getTitle())
-                    .snippet(event.getVenue() + " • " + (int) event.getPrice()+ " €")
-                    .icon(BitmapDescriptorFactory.defaultMarker(markerColor));
+    @Override
+    public void onEventsChanged() {
+        if (mMap == null) return;
+
+        if (!cameraPlaced && eventRepository.getEventCount() > 0) {
+            // The camera move ends in an idle callback, which places the markers
+            cameraPlaced = true;
+            boundsPipeline.submit(generation -> eventBounds());
+        } else {
+            refreshMarkers();
+        }
+    }
 
-            Marker marker = mMap.addMarker(markerOptions);
-            if (marker != null) {
-                markerEventMap.put(marker.getId(), event);
-            }
+    @Override
+    public void onEventsFailed(String message) {
+        Toast.makeText(MapActivity.this,
+                "Failed to load events", Toast.LENGTH_SHORT).show();
+    }
 
-            boundsBuilder.include(position);
+    // Worker thread, walks the repository's events in place
+    private LatLngBounds eventBounds() {
+        List<Event> events = eventRepository.getIndex().byDate();
+        if (events.isEmpty()) return null;
+
+        double south = 90, west = 180, north = -90, east = -180;
+        for (Event event : events) {
+            south = Math.min(south, event.getLatitude());
+            north = Math.max(north, event.getLatitude());
+            west = Math.min(west, event.getLongitude());
+            east = Math.max(east, event.getLongitude());
         }
+        return new LatLngBounds(new LatLng(south, west), new LatLng(north, east));
+    }
 
-        // Move camera to show all markers if possible
+    // Move camera to show all events (only on first load)
+    private void placeCamera(LatLngBounds bounds) {
+        if (mMap == null) return;
+        if (bounds == null) {
+            refreshMarkers();
+            return;
+        }
 
         try {
-            LatLngBounds bounds = boundsBuilder.build();
             int padding = 100; // is pixels
             mMap.animateCamera(CameraUpdateFactory.newLatLngBounds(bounds, padding));
         } catch (Exception e) {
+            // If only one marker or error, zoom to default location
+            mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(bounds.getCenter(), 12f));
+        }
+    }
 
+    private void refreshMarkers() {
+        if (mMap == null) return;
 
-            // If only one marker or error, zoom to default location
-            if (!allEvents.isEmpty()) {
-                Event first = allEvents.get(0);
-                mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(
-                        new LatLng(first.getLatitude(), first.getLongitude()), 12f));
-            }
+        LatLngBounds visible = mMap.getProjection().getVisibleRegion().latLngBounds;
+        eventRepository.loadViewport(visible.southwest.latitude, visible.southwest.longitude,
+                visible.northeast.latitude, visible.northeast.longitude);
+
+        float zoom = mMap.getCameraPosition().zoom;
+        clusterPipeline.submit(generation -> markerAdapter.build(
+                MarkerClusterer.cluster(eventRepository.getSpatialIndex(),
+                        visible.southwest.latitude, visible.southwest.longitude,
+                        visible.northeast.latitude, visible.northeast.longitude, zoom, generation),
+                generation));
+    }
+
+    // Tapping a cluster zooms until its events split up
+    private void zoomInto(MarkerClusterer.Cluster cluster) {
+        if (cluster.south == cluster.north && cluster.west == cluster.east) {
+            // Same spot, bounds would be empty
+            mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(
+                    new LatLng(cluster.latitude, cluster.longitude), mMap.getCameraPosition().zoom + 2));
+            return;
         }
+        LatLngBounds bounds = new LatLngBounds(new LatLng(cluster.south, cluster.west),
+                new LatLng(cluster.north, cluster.east));
+        int padding = 100; // is pixels
+        mMap.animateCamera(CameraUpdateFactory.newLatLngBounds(bounds, padding));
     }
 
-    private float getMarkerColor(String category) {
-        switch (category) {
-            case Constants.CATEGORY_THEATER:
-                return BitmapDescriptorFactory.HUE_VIOLET;
-            case Constants.CATEGORY_CINEMA:
-                return BitmapDescriptorFactory.HUE_BLUE;
-            case Constants.CATEGORY_CONCERT:
-                return BitmapDescriptorFactory.HUE_ORANGE;
-            case Constants.CATEGORY_SPORTS:
-                return BitmapDescriptorFactory.HUE_GREEN;
-            case Constants.CATEGORY_EXHIBITION:
-                return BitmapDescriptorFactory.HUE_YELLOW;
-            case Constants.CATEGORY_FESTIVAL:
-                return BitmapDescriptorFactory.HUE_ROSE;
-            default:
-                return BitmapDescriptorFactory.HUE_RED;
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        clusterPipeline.cancel();
+        boundsPipeline.cancel();
+        if (markerAdapter != null) {
+            markerAdapter.release();
         }
+        eventRepository.cancelViewportLoads();
+        eventRepository.removeListener(this);
     }
-}
\ No newline at end of file
+}
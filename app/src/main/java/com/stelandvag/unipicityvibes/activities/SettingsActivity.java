@@ -24,6 +24,7 @@ import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.stelandvag.unipicityvibes.R;
 import com.stelandvag.unipicityvibes.utils.Constants;
+import com.stelandvag.unipicityvibes.utils.GeofenceManager;
 
 import java.util.Locale;
 
@@ -144,6 +145,10 @@ public class SettingsActivity extends BaseActivity {
 
         notificationsSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
             prefs.edit().putBoolean(Constants.PREF_NOTIFICATIONS_ENABLED, isChecked).apply();
+            if (!isChecked) {
+                // No geofences keep waking the app for notifications that would be dropped
+                GeofenceManager.getInstance(this).clear();
+            }
             Toast.makeText(this,
                     isChecked ? "Notifications enabled" : "Notifications disabled",
                     Toast.LENGTH_SHORT).show();
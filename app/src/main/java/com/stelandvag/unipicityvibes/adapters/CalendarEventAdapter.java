@@ -7,29 +7,27 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.stelandvag.unipicityvibes.R;
 import com.stelandvag.unipicityvibes.models.Event;
+import com.stelandvag.unipicityvibes.models.EventDisplayModel;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 
-public class CalendarEventAdapter extends RecyclerView.Adapter<CalendarEventAdapter.ViewHolder> {
+public class CalendarEventAdapter extends ListAdapter<EventDisplayModel, CalendarEventAdapter.ViewHolder> {
 
     private Context context;
-    private List<Event> eventList;
     private OnEventClickListener listener;
 
     public interface OnEventClickListener {
         void onEventClick(Event event);
     }
 
-    public CalendarEventAdapter(Context context, List<Event> eventList, OnEventClickListener listener) {
+    public CalendarEventAdapter(Context context, OnEventClickListener listener) {
+        super(new EventDiffCallback());
         this.context = context;
-        this.eventList = eventList;
         this.listener = listener;
     }
 
@@ -42,18 +40,12 @@ public class CalendarEventAdapter extends RecyclerView.Adapter<CalendarEventAdap
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Event event = eventList.get(position);
-        holder.bind(event);
+        holder.bind(getItem(position));
     }
 
-    @Override
-    public int getItemCount() {
-        return eventList.size();
-    }
-
-    public void updateList(List<Event> newList) {
-        this.eventList = newList;
-        notifyDataSetChanged();
+    // Diffed against the current list on a background thread, only changed cards are rebound
+    public void updateList(List<EventDisplayModel> newList) {
+        submitList(newList);
     }
 
     class ViewHolder extends RecyclerView.ViewHolder {
@@ -70,20 +62,18 @@ public class CalendarEventAdapter extends RecyclerView.Adapter<CalendarEventAdap
             itemView.setOnClickListener(v -> {
                 int pos = getAdapterPosition();
                 if (pos != RecyclerView.NO_POSITION && listener != null) {
-                    listener.onEventClick(eventList.get(pos));
+                    listener.onEventClick(getItem(pos).event);
                 }
             });
         }
 
-        public void bind(Event event) {
-            eventTitle.setText(event.getTitle());
-            eventVenue.setText("📍 " + event.getVenue());
-            categoryBadge.setText(event.getCategory().toUpperCase());
-            eventPrice.setText(String.format(Locale.getDefault(), "€%.0f", event.getPrice()));
-
-            // Format time
-            SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
-            eventTime.setText(timeFormat.format(new Date(event.getDateTime())));
+        // Texts are preformatted on the worker thread, binding only assigns them
+        public void bind(EventDisplayModel model) {
+            eventTitle.setText(model.event.getTitle());
+            eventVenue.setText(model.venueText);
+            categoryBadge.setText(model.badgeText);
+            eventPrice.setText(model.priceText);
+            eventTime.setText(model.timeText);
         }
     }
 }
\ No newline at end of file
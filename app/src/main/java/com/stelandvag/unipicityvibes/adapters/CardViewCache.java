@@ -0,0 +1,51 @@
+package com.stelandvag.unipicityvibes.adapters;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.LayoutRes;
+import androidx.annotation.Nullable;
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater;
+
+import java.util.ArrayDeque;
+
+// Item views inflated on a background thread while the screen waits for data,
+// so the first layout of a list takes ready views instead of inflating them on the UI thread.
+// Main thread only, the inflater delivers its views there.
+public class CardViewCache {
+
+    private final AsyncLayoutInflater inflater;
+    @LayoutRes
+    private final int layoutRes;
+    private final ArrayDeque<View> views = new ArrayDeque<>();
+    private boolean released = false;
+
+    public CardViewCache(Context context, @LayoutRes int layoutRes) {
+        this.inflater = new AsyncLayoutInflater(context);
+        this.layoutRes = layoutRes;
+    }
+
+    // The parent only provides layout params, the views are not attached to it
+    public void warm(ViewGroup parent, int count) {
+        for (int i = 0; i < count; i++) {
+            inflater.inflate(layoutRes, parent, (view, resid, p) -> {
+                if (!released) {
+                    views.add(view);
+                }
+            });
+        }
+    }
+
+    // A pre-inflated view, or null when none is ready and the caller should inflate itself
+    @Nullable
+    public View poll() {
+        return views.poll();
+    }
+
+    // Drops what is left and ignores views still being inflated. Later cards inflate as usual.
+    public void release() {
+        released = true;
+        views.clear();
+    }
+}
@@ -8,55 +8,97 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader;
+import com.bumptech.glide.util.FixedPreloadSizeProvider;
 import com.stelandvag.unipicityvibes.R;
 import com.stelandvag.unipicityvibes.models.Event;
+import com.stelandvag.unipicityvibes.models.EventDisplayModel;
+import com.stelandvag.unipicityvibes.utils.EventImages;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
 
-public class EventAdapter extends RecyclerView.Adapter<EventAdapter.EventViewHolder> {
+public class EventAdapter extends ListAdapter<EventDisplayModel, EventAdapter.EventViewHolder>
+        implements ListPreloader.PreloadModelProvider<Event> {
 
     private Context context;
-    private List<Event> eventList;
     private OnEventClickListener listener;
+    // Card image size in pixels, thumbnails are decoded at exactly this size
+    private final int thumbnailWidth;
+    private final int thumbnailHeight;
+    // Optional source of cards inflated ahead of time
+    private CardViewCache viewCache;
 
     // Interface for click handling
     public interface OnEventClickListener {
         void onEventClick(Event event);
     }
 
-    public EventAdapter(Context context, List<Event> eventList, OnEventClickListener listener) {
+    public EventAdapter(Context context, OnEventClickListener listener) {
+        super(new EventDiffCallback());
         this.context = context;
-        this.eventList = eventList;
         this.listener = listener;
+        int[] size = EventImages.thumbnailSize(context);
+        thumbnailWidth = size[0];
+        thumbnailHeight = size[1];
     }
 
     @NonNull
     @Override
     public EventViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(context).inflate(R.layout.item_event_card, parent, false);
+        View view = viewCache != null ? viewCache.poll() : null;
+        if (view == null) {
+            view = LayoutInflater.from(context).inflate(R.layout.item_event_card, parent, false);
+        }
         return new EventViewHolder(view);
     }
 
     @Override
     public void onBindViewHolder(@NonNull EventViewHolder holder, int position) {
-        Event event = eventList.get(position);
-        holder.bind(event);
+        holder.bind(getItem(position));
+    }
+
+    public void setViewCache(CardViewCache viewCache) {
+        this.viewCache = viewCache;
+    }
+
+    // Diffed against the current list on a background thread, only changed cards are rebound
+    public void updateList(List<EventDisplayModel> newList) {
+        submitList(newList);
+    }
+
+    // committed runs once the new list is applied
+    public void updateList(List<EventDisplayModel> newList, Runnable committed) {
+        submitList(newList, committed);
+    }
+
+    // Scroll listener that loads the thumbnails of the next cards in the scroll direction
+    public RecyclerViewPreloader<Event> createPreloader(int preloadAhead) {
+        return new RecyclerViewPreloader<>(Glide.with(context), this,
+                new FixedPreloadSizeProvider<>(thumbnailWidth, thumbnailHeight), preloadAhead);
     }
 
+    @NonNull
     @Override
-    public int getItemCount() {
-        return eventList.size();
+    public List<Event> getPreloadItems(int position) {
+        if (position >= getItemCount() || !EventImages.hasImage(getItem(position).event)) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(getItem(position).event);
     }
 
-    public void updateList(List<Event> newList) {
-        this.eventList = newList;
-        notifyDataSetChanged();
+    @Nullable
+    @Override
+    public RequestBuilder<?> getPreloadRequestBuilder(@NonNull Event event) {
+        return EventImages.thumbnail(Glide.with(context), event.getImageUrl(),
+                thumbnailWidth, thumbnailHeight);
     }
 
     class EventViewHolder extends RecyclerView.ViewHolder {
@@ -75,26 +117,24 @@ public class EventAdapter extends RecyclerView.Adapter<EventAdapter.EventViewHol
             itemView.setOnClickListener(v -> {
                 int pos = getAdapterPosition();
                 if (pos != RecyclerView.NO_POSITION && listener != null) {
-                    listener.onEventClick(eventList.get(pos));
+                    listener.onEventClick(getItem(pos).event);
                 }
             });
         }
 
-        public void bind(Event event) {
+        // Texts are preformatted on the worker thread, binding only assigns them
+        public void bind(EventDisplayModel model) {
+            Event event = model.event;
             eventTitle.setText(event.getTitle());
-            categoryBadge.setText(event.getCategory().toUpperCase());
-            eventPrice.setText(String.format(Locale.getDefault(), "€%.0f", event.getPrice()));
-            eventSeats.setText(event.getAvailableSeats() + " left");
-
-            // Format date
-            SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
-            eventDate.setText(sdf.format(new Date(event.getDateTime())));
-
-            // Load image with Glide
-            if (event.getImageUrl() != null && !event.getImageUrl().isEmpty()) {
-                Glide.with(context)
-                        .load(event.getImageUrl())
-                        .centerCrop()
+            categoryBadge.setText(model.badgeText);
+            eventPrice.setText(model.priceText);
+            eventSeats.setText(model.seatsText);
+            eventDate.setText(model.dateText);
+
+            // Load a thumbnail sized to the card, usually already preloaded while scrolling
+            if (EventImages.hasImage(event)) {
+                EventImages.thumbnail(Glide.with(context), event.getImageUrl(),
+                                thumbnailWidth, thumbnailHeight)
                         .placeholder(R.drawable.placeholder_event)
                         .into(eventImage);
             } else {
@@ -0,0 +1,23 @@
+package com.stelandvag.unipicityvibes.adapters;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.stelandvag.unipicityvibes.models.EventDisplayModel;
+
+import java.util.Objects;
+
+// Items are the same event when the ids match, and unchanged when every shown text matches.
+// The repository replaces an Event instance on each change, so an untouched event is the same instance.
+public class EventDiffCallback extends DiffUtil.ItemCallback<EventDisplayModel> {
+
+    @Override
+    public boolean areItemsTheSame(@NonNull EventDisplayModel oldItem, @NonNull EventDisplayModel newItem) {
+        return Objects.equals(oldItem.event.getEventId(), newItem.event.getEventId());
+    }
+
+    @Override
+    public boolean areContentsTheSame(@NonNull EventDisplayModel oldItem, @NonNull EventDisplayModel newItem) {
+        return oldItem.sameContentAs(newItem);
+    }
+}
@@ -0,0 +1,281 @@
+package com.stelandvag.unipicityvibes.adapters;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.view.Choreographer;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.stelandvag.unipicityvibes.R;
+import com.stelandvag.unipicityvibes.data.EventPipeline;
+import com.stelandvag.unipicityvibes.data.MarkerClusterer;
+import com.stelandvag.unipicityvibes.models.Event;
+import com.stelandvag.unipicityvibes.utils.Constants;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+// Keeps the map markers in line with the latest clusters, like a list adapter for the map.
+// What each marker looks like (texts, colour, cluster bitmap) is built on the event worker.
+// The differences to the markers on the map are then applied a few at a time per frame, within
+// FRAME_BUDGET_NS, so a large update never blocks a frame. Markers are matched by cluster key,
+// which for a single event is its eventId, so a live change only touches markers whose look changed.
+public class MarkerAdapter implements Choreographer.FrameCallback {
+
+    // Share of a 60 Hz frame the marker updates may take
+    private static final long FRAME_BUDGET_NS = 4_000_000L;
+    // Size of the cluster circle
+    private static final int CLUSTER_ICON_DP = 40;
+
+    // What one marker should look like. Immutable, built on the worker thread.
+    public static final class MarkerSpec {
+        public final MarkerClusterer.Cluster cluster;
+        final LatLng position;
+        final String title;
+        final String snippet;
+        // Pin colour of a single event
+        final float hue;
+        // Count shown on a cluster and its drawn circle
+        final String label;
+        final Bitmap bitmap;
+
+        MarkerSpec(MarkerClusterer.Cluster cluster, String title, String snippet, float hue,
+                   String label, Bitmap bitmap) {
+            this.cluster = cluster;
+            this.position = new LatLng(cluster.latitude, cluster.longitude);
+            this.title = title;
+            this.snippet = snippet;
+            this.hue = hue;
+            this.label = label;
+            this.bitmap = bitmap;
+        }
+
+        boolean sameLook(MarkerSpec other) {
+            return hue == other.hue
+                    && Objects.equals(label, other.label)
+                    && Objects.equals(title, other.title)
+                    && Objects.equals(snippet, other.snippet);
+        }
+    }
+
+    private final float density;
+    private final int clusterColor;
+    // Worker thread: cluster circles by label, the same few counts come back on every zoom
+    private final Map<String, Bitmap> clusterBitmaps = new HashMap<>();
+
+    // Main thread
+    private final GoogleMap map;
+    private final Map<String, Marker> markers = new HashMap<>();
+    private final Map<String, BitmapDescriptor> icons = new HashMap<>();
+    private final ArrayDeque<MarkerSpec> toAdd = new ArrayDeque<>();
+    private final ArrayDeque<MarkerSpec> toUpdate = new ArrayDeque<>();
+    private final ArrayDeque<String> toRemove = new ArrayDeque<>();
+    private boolean frameScheduled = false;
+
+    public MarkerAdapter(Context context, GoogleMap map) {
+        this.map = map;
+        density = context.getResources().getDisplayMetrics().density;
+        clusterColor = ContextCompat.getColor(context, R.color.purple_500);
+    }
+
+    // The cluster behind a marker, for click handling
+    @Nullable
+    public static MarkerClusterer.Cluster clusterOf(Marker marker) {
+        Object tag = marker.getTag();
+        return tag instanceof MarkerSpec ? ((MarkerSpec) tag).cluster : null;
+    }
+
+    // Worker thread, e.g. inside the EventPipeline job that clustered
+    public List<MarkerSpec> build(List<MarkerClusterer.Cluster> clusters, EventPipeline.Generation generation) {
+        List<MarkerSpec> specs = new ArrayList<>(clusters.size());
+        for (MarkerClusterer.Cluster cluster : clusters) {
+            if (generation.isCancelled()) break;
+            if (cluster.isSingle()) {
+                Event event = cluster.first();
+                specs.add(new MarkerSpec(cluster, event.getTitle(),
+                        event.getVenue() + " • " + (int) event.getPrice() + " €",
+                        getMarkerColor(event.getCategory()), null, null));
+            } else {
+                int count = cluster.events.size();
+                String label = count > 999 ? "999+" : String.valueOf(count);
+                Bitmap bitmap = clusterBitmaps.get(label);
+                if (bitmap == null) {
+                    bitmap = drawClusterIcon(label);
+                    clusterBitmaps.put(label, bitmap);
+                }
+                specs.add(new MarkerSpec(cluster, null, null, 0, label, bitmap));
+            }
+        }
+        return specs;
+    }
+
+    // Main thread. Replaces any work left from the previous submit: the diff is always taken
+    // against the markers actually on the map.
+    public void submit(List<MarkerSpec> specs) {
+        toAdd.clear();
+        toUpdate.clear();
+        toRemove.clear();
+
+        Set<String> keys = new HashSet<>(specs.size() * 2);
+        for (MarkerSpec spec : specs) {
+            keys.add(spec.cluster.key);
+            Marker marker = markers.get(spec.cluster.key);
+            if (marker == null) {
+                toAdd.add(spec);
+                continue;
+            }
+            MarkerSpec shown = (MarkerSpec) marker.getTag();
+            if (shown.position.equals(spec.position) && shown.sameLook(spec)) {
+                // Nothing visible changed, only keep the tag current for the click handlers
+                marker.setTag(spec);
+            } else {
+                toUpdate.add(spec);
+            }
+        }
+        for (String key : markers.keySet()) {
+            if (!keys.contains(key)) {
+                toRemove.add(key);
+            }
+        }
+
+        if (!frameScheduled && !(toAdd.isEmpty() && toUpdate.isEmpty() && toRemove.isEmpty())) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        long deadline = System.nanoTime() + FRAME_BUDGET_NS;
+        // At least one change per frame, so a slow device still makes progress
+        do {
+            if (!applyNext()) {
+                frameScheduled = false;
+                return;
+            }
+        } while (System.nanoTime() < deadline);
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    // Stop applying, e.g. when the map screen is destroyed
+    public void release() {
+        Choreographer.getInstance().removeFrameCallback(this);
+        frameScheduled = false;
+        toAdd.clear();
+        toUpdate.clear();
+        toRemove.clear();
+    }
+
+    // Updates and adds go before removals, so zooming never leaves the map empty in between
+    private boolean applyNext() {
+        MarkerSpec spec = toUpdate.poll();
+        if (spec != null) {
+            update(spec);
+            return true;
+        }
+        spec = toAdd.poll();
+        if (spec != null) {
+            Marker marker = map.addMarker(new MarkerOptions()
+                    .position(spec.position)
+                    .title(spec.title)
+                    .snippet(spec.snippet)
+                    .icon(icon(spec)));
+            if (marker != null) {
+                marker.setTag(spec);
+                markers.put(spec.cluster.key, marker);
+            }
+            return true;
+        }
+        String key = toRemove.poll();
+        if (key != null) {
+            Marker marker = markers.remove(key);
+            if (marker != null) {
+                marker.remove();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void update(MarkerSpec spec) {
+        Marker marker = markers.get(spec.cluster.key);
+        if (marker == null) return;
+        MarkerSpec shown = (MarkerSpec) marker.getTag();
+        if (!shown.position.equals(spec.position)) {
+            marker.setPosition(spec.position);
+        }
+        if (!shown.sameLook(spec)) {
+            marker.setIcon(icon(spec));
+            marker.setTitle(spec.title);
+            marker.setSnippet(spec.snippet);
+        }
+        marker.setTag(spec);
+    }
+
+    private BitmapDescriptor icon(MarkerSpec spec) {
+        String key = spec.label != null ? spec.label : "hue:" + spec.hue;
+        BitmapDescriptor icon = icons.get(key);
+        if (icon == null) {
+            icon = spec.label != null
+                    ? BitmapDescriptorFactory.fromBitmap(spec.bitmap)
+                    : BitmapDescriptorFactory.defaultMarker(spec.hue);
+            icons.put(key, icon);
+        }
+        return icon;
+    }
+
+    private Bitmap drawClusterIcon(String label) {
+        int size = Math.round(CLUSTER_ICON_DP * density);
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        Paint circle = new Paint(Paint.ANTI_ALIAS_FLAG);
+        circle.setColor(clusterColor);
+        canvas.drawCircle(size / 2f, size / 2f, size / 2f, circle);
+
+        Paint text = new Paint(Paint.ANTI_ALIAS_FLAG);
+        text.setColor(Color.WHITE);
+        text.setTextAlign(Paint.Align.CENTER);
+        text.setFakeBoldText(true);
+        text.setTextSize((label.length() > 3 ? 11 : 14) * density);
+        float baseline = size / 2f - (text.descent() + text.ascent()) / 2f;
+        canvas.drawText(label, size / 2f, baseline, text);
+        return bitmap;
+    }
+
+    private static float getMarkerColor(String category) {
+        if (category == null) return BitmapDescriptorFactory.HUE_RED;
+        switch (category) {
+            case Constants.CATEGORY_THEATER:
+                return BitmapDescriptorFactory.HUE_VIOLET;
+            case Constants.CATEGORY_CINEMA:
+                return BitmapDescriptorFactory.HUE_BLUE;
+            case Constants.CATEGORY_CONCERT:
+                return BitmapDescriptorFactory.HUE_ORANGE;
+            case Constants.CATEGORY_SPORTS:
+                return BitmapDescriptorFactory.HUE_GREEN;
+            case Constants.CATEGORY_EXHIBITION:
+                return BitmapDescriptorFactory.HUE_YELLOW;
+            case Constants.CATEGORY_FESTIVAL:
+                return BitmapDescriptorFactory.HUE_ROSE;
+            default:
+                return BitmapDescriptorFactory.HUE_RED;
+        }
+    }
+}
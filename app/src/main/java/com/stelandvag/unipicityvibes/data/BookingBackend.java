@@ -0,0 +1,71 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Reservation;
+
+// Storage steps of a booking. FirebaseBookingBackend is the real one,
+// tests use a local stand-in to load test BookingService.
+public interface BookingBackend {
+
+    // Returned by incrementSeats when the event is full
+    int SOLD_OUT = -1;
+    // Returned by incrementSeats when the event's counter does not exist yet, see setUpSeats
+    int NOT_SET_UP = -2;
+
+    interface Callback<T> {
+        void onSuccess(T result);
+        void onFailure(String message);
+    }
+
+    // Outcome of claimKey
+    enum Claim {
+        // The key is this call's now
+        CLAIMED,
+        // Taken over from a booking that started too long ago and never finished. A seat it
+        // took is still marked with the user and has to be released before taking another.
+        TAKEN_OVER,
+        // The user already has a reservation for the event
+        BOOKED,
+        // Another booking of the same user and event is still running
+        IN_PROGRESS
+    }
+
+    // Atomically claims the idempotency key of one user and event (userReservations/{uid}/{eventId})
+    void claimKey(String eventId, String userId, Callback<Claim> callback);
+
+    // Gives the key back after a booking could not go through
+    void releaseKey(String eventId, String userId);
+
+    // Creates the seat counter of an event from the capacity and committed seats on the event:
+    // eventSeats/{eventId}, or for an event with seatShards > 1 all of seatShards/{eventId}
+    // at once, the seats left split with BookingService.shardCapacity. Does nothing if they
+    // already exist, so devices racing to set them up end with the same counters.
+    void setUpSeats(String eventId, Callback<Void> callback);
+
+    // Compare-and-set increment of the booked seats, only while below capacity. The same write
+    // marks the seat with the user until the reservation is committed, so the seat of a booking
+    // that died half-way can be found again. A user whose seat is still marked keeps that one.
+    // Succeeds with the new count, SOLD_OUT or NOT_SET_UP.
+    void incrementSeats(String eventId, String userId, Callback<Integer> callback);
+
+    // Gives back the seat marked with this user, if there is one, in the same write that
+    // removes the mark. Used when the reservation write failed and when a stale claim is taken over.
+    void releaseHeldSeat(String eventId, String userId, Callback<Void> callback);
+
+    // Same as incrementSeats on one shard of a sharded event, limited to the capacity stored
+    // on the shard itself (seatShards/{eventId}/{shard}/capacity). NOT_SET_UP while the shards
+    // don't exist.
+    void incrementShard(String eventId, int shard, String userId, Callback<Integer> callback);
+
+    void releaseHeldShardSeat(String eventId, int shard, String userId, Callback<Void> callback);
+
+    // Writes the reservation and its user index entry and clears the seat mark, in one
+    // multi-path update. The same write counts the seat on the event (bookedSeats), so
+    // readers never sum the shards.
+    void commitReservation(Reservation reservation, boolean sharded, Callback<Void> callback);
+
+    // Deletes the reservation and its user index entry and gives its seat back to the counter
+    // and the event, all in one write that only goes through while the reservation still
+    // exists. Succeeds with false when it was already gone, e.g. the same cancellation sent
+    // again from another device or a replay, and then nothing is given back.
+    void removeReservation(Reservation reservation, boolean sharded, Callback<Boolean> callback);
+}
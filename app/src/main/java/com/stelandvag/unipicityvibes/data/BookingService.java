@@ -0,0 +1,263 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+import com.stelandvag.unipicityvibes.models.Reservation;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Books a seat in three steps so concurrent taps can never oversell:
+// 1. claim the user's idempotency key for the event (a second tap or retry stops here),
+// 2. take a seat with a compare-and-set on the counter that checks capacity
+//    (for sharded events on one of N shard counters, so bookings don't serialise on one node),
+// 3. commit the reservation.
+// A failed step undoes the earlier ones. The seat stays marked with the user until the commit,
+// so a booking that died between 2 and 3 gives its seat back when its claim is taken over.
+public class BookingService {
+
+    public enum Result {
+        BOOKED,
+        ALREADY_BOOKED,
+        // An earlier attempt for the same user and event has not settled yet, try again later
+        IN_PROGRESS,
+        SOLD_OUT,
+        // The cancellation went through, now or on an earlier send
+        CANCELLED,
+        FAILED
+    }
+
+    public interface Callback {
+        void onResult(Result result, String message);
+    }
+
+    private final BookingBackend backend;
+
+    public BookingService(BookingBackend backend) {
+        this.backend = backend;
+    }
+
+    public void book(Event event, Reservation reservation, Callback callback) {
+        String eventId = reservation.getEventId();
+        String userId = reservation.getUserId();
+
+        backend.claimKey(eventId, userId, new BookingBackend.Callback<BookingBackend.Claim>() {
+            @Override
+            public void onSuccess(BookingBackend.Claim claim) {
+                switch (claim) {
+                    case BOOKED:
+                        callback.onResult(Result.ALREADY_BOOKED, null);
+                        break;
+                    case IN_PROGRESS:
+                        callback.onResult(Result.IN_PROGRESS, null);
+                        break;
+                    case TAKEN_OVER:
+                        releaseStaleSeat(event, reservation, 0, callback);
+                        break;
+                    default:
+                        takeAnySeat(event, reservation, callback);
+                        break;
+                }
+            }
+
+            @Override
+            public void onFailure(String message) {
+                callback.onResult(Result.FAILED, message);
+            }
+        });
+    }
+
+    // Gives back what the abandoned booking may hold, on every shard of a sharded event.
+    // If that fails the claim is kept: until it goes stale again retries see IN_PROGRESS,
+    // then the takeover releases again, so the seat can't leak by dropping the claim.
+    private void releaseStaleSeat(Event event, Reservation reservation, int shard, Callback callback) {
+        String eventId = reservation.getEventId();
+        String userId = reservation.getUserId();
+        BookingBackend.Callback<Void> next = new BookingBackend.Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                if (event.getSeatShards() > 1 && shard + 1 < event.getSeatShards()) {
+                    releaseStaleSeat(event, reservation, shard + 1, callback);
+                } else {
+                    takeAnySeat(event, reservation, callback);
+                }
+            }
+
+            @Override
+            public void onFailure(String message) {
+                callback.onResult(Result.FAILED, message);
+            }
+        };
+
+        if (event.getSeatShards() > 1) {
+            backend.releaseHeldShardSeat(eventId, shard, userId, next);
+        } else {
+            backend.releaseHeldSeat(eventId, userId, next);
+        }
+    }
+
+    private void takeAnySeat(Event event, Reservation reservation, Callback callback) {
+        if (event.getSeatShards() > 1) {
+            // Random start spreads concurrent bookings over the shards
+            int start = ThreadLocalRandom.current().nextInt(event.getSeatShards());
+            takeShardSeat(event, reservation, start, 0, false, callback);
+        } else {
+            takeSeat(reservation, false, callback);
+        }
+    }
+
+    // The first booking of an event sets up its counter, then tries again (same for the shards)
+    private void takeSeat(Reservation reservation, boolean setUp, Callback callback) {
+        String eventId = reservation.getEventId();
+        String userId = reservation.getUserId();
+
+        backend.incrementSeats(eventId, userId, new BookingBackend.Callback<Integer>() {
+            @Override
+            public void onSuccess(Integer bookedSeats) {
+                if (bookedSeats == BookingBackend.NOT_SET_UP) {
+                    if (setUp) {
+                        onFailure("Event not found");
+                    } else {
+                        setUpSeats(reservation, () -> takeSeat(reservation, true, callback), callback);
+                    }
+                    return;
+                }
+                if (bookedSeats == BookingBackend.SOLD_OUT) {
+                    backend.releaseKey(eventId, userId);
+                    callback.onResult(Result.SOLD_OUT, null);
+                    return;
+                }
+                commit(reservation, false,
+                        done -> backend.releaseHeldSeat(eventId, userId, done), callback);
+            }
+
+            @Override
+            public void onFailure(String message) {
+                backend.releaseKey(eventId, userId);
+                callback.onResult(Result.FAILED, message);
+            }
+        });
+    }
+
+    private void setUpSeats(Reservation reservation, Runnable retry, Callback callback) {
+        backend.setUpSeats(reservation.getEventId(), new BookingBackend.Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                retry.run();
+            }
+
+            @Override
+            public void onFailure(String message) {
+                backend.releaseKey(reservation.getEventId(), reservation.getUserId());
+                callback.onResult(Result.FAILED, message);
+            }
+        });
+    }
+
+    // Tries the shards one after another from the start shard, the event is sold out once all are full
+    private void takeShardSeat(Event event, Reservation reservation, int shard, int tried, boolean setUp,
+                               Callback callback) {
+        String eventId = reservation.getEventId();
+        String userId = reservation.getUserId();
+        int shards = event.getSeatShards();
+
+        backend.incrementShard(eventId, shard, userId, new BookingBackend.Callback<Integer>() {
+                    @Override
+                    public void onSuccess(Integer bookedSeats) {
+                        if (bookedSeats == BookingBackend.NOT_SET_UP && !setUp) {
+                            setUpSeats(reservation, () -> takeShardSeat(event, reservation, shard, tried,
+                                    true, callback), callback);
+                        } else if (bookedSeats == BookingBackend.NOT_SET_UP) {
+                            onFailure("Event not found");
+                        } else if (bookedSeats != BookingBackend.SOLD_OUT) {
+                            reservation.setSeatShard(shard);
+                            commit(reservation, true,
+                                    done -> backend.releaseHeldShardSeat(eventId, shard, userId, done),
+                                    callback);
+                        } else if (tried + 1 < shards) {
+                            takeShardSeat(event, reservation, (shard + 1) % shards, tried + 1, setUp,
+                                    callback);
+                        } else {
+                            backend.releaseKey(eventId, userId);
+                            callback.onResult(Result.SOLD_OUT, null);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(String message) {
+                        backend.releaseKey(eventId, userId);
+                        callback.onResult(Result.FAILED, message);
+                    }
+                });
+    }
+
+    private interface SeatRelease {
+        void release(BookingBackend.Callback<Void> done);
+    }
+
+    // A failed commit gives the seat back before the key, if the seat can't be given back the
+    // claim stays so the takeover retries it
+    private void commit(Reservation reservation, boolean sharded, SeatRelease releaseSeat,
+                        Callback callback) {
+        backend.commitReservation(reservation, sharded, new BookingBackend.Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                callback.onResult(Result.BOOKED, null);
+            }
+
+            @Override
+            public void onFailure(String message) {
+                releaseSeat.release(new BookingBackend.Callback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                        backend.releaseKey(reservation.getEventId(), reservation.getUserId());
+                        callback.onResult(Result.FAILED, message);
+                    }
+
+                    @Override
+                    public void onFailure(String releaseMessage) {
+                        callback.onResult(Result.FAILED, message);
+                    }
+                });
+            }
+        });
+    }
+
+    // Removes the reservation and gives its seat back in one write, for a sharded event to the
+    // reservation's shard. The seat is only given back by the call that removed the reservation,
+    // so a cancellation sent twice can't free a seat twice. A seat booked before the counters
+    // existed has them set up first, so there is a counter to give it back to.
+    public void cancel(Reservation reservation, boolean sharded, Callback callback) {
+        backend.setUpSeats(reservation.getEventId(), new BookingBackend.Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                backend.removeReservation(reservation, sharded, new BookingBackend.Callback<Boolean>() {
+                    @Override
+                    public void onSuccess(Boolean removed) {
+                        // Already gone counts as cancelled, the earlier call gave the seat back
+                        callback.onResult(Result.CANCELLED, null);
+                    }
+
+                    @Override
+                    public void onFailure(String message) {
+                        callback.onResult(Result.FAILED, message);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(String message) {
+                callback.onResult(Result.FAILED, message);
+            }
+        });
+    }
+
+    // How the seats left are split when setUpSeats creates the shards of an event:
+    // evenly, the first shards take the remainder
+    public static int shardCapacity(int capacity, int shards, int shard) {
+        return capacity / shards + (shard < capacity % shards ? 1 : 0);
+    }
+
+    // Same user and event always give the same key, so a retried booking can't be counted twice
+    public static String idempotencyKey(String eventId, String userId) {
+        return eventId + "_" + userId;
+    }
+}
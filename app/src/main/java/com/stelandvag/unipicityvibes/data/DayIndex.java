@@ -0,0 +1,68 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Events bucketed by local calendar day (epoch day in the given zone).
+// Built once per data change from the date-sorted events, then read-only, so it can be
+// handed from the worker thread to the main thread and back without copying.
+// A day lookup costs O(events that day) and its count O(1).
+public final class DayIndex {
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    public static final DayIndex EMPTY = new DayIndex(ZoneId.systemDefault(), Collections.emptyMap());
+
+    private final ZoneId zone;
+    private final Map<Long, List<Event>> eventsByDay;
+
+    private DayIndex(ZoneId zone, Map<Long, List<Event>> eventsByDay) {
+        this.zone = zone;
+        this.eventsByDay = eventsByDay;
+    }
+
+    // Events must be sorted by date, each day's bucket keeps that order
+    public static DayIndex build(List<Event> events, ZoneId zone, EventPipeline.Generation generation) {
+        ZoneRules rules = zone.getRules();
+        Map<Long, List<Event>> buckets = new HashMap<>();
+        for (Event event : events) {
+            if (generation.isCancelled()) break;
+            buckets.computeIfAbsent(epochDay(rules, event.getDateTime()), day -> new ArrayList<>())
+                    .add(event);
+        }
+        Map<Long, List<Event>> frozen = new HashMap<>(buckets.size() * 2);
+        for (Map.Entry<Long, List<Event>> entry : buckets.entrySet()) {
+            frozen.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        }
+        return new DayIndex(zone, frozen);
+    }
+
+    // The offset is looked up per event, so days stay right across daylight saving changes
+    static long epochDay(ZoneRules rules, long time) {
+        long offsetMs = rules.getOffset(Instant.ofEpochMilli(time)).getTotalSeconds() * 1000L;
+        return Math.floorDiv(time + offsetMs, DAY_MS);
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    public List<Event> eventsOn(LocalDate date) {
+        List<Event> events = eventsByDay.get(date.toEpochDay());
+        return events == null ? Collections.emptyList() : events;
+    }
+
+    public int countOn(LocalDate date) {
+        List<Event> events = eventsByDay.get(date.toEpochDay());
+        return events == null ? 0 : events.size();
+    }
+}
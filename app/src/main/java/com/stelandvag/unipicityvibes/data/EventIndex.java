@@ -0,0 +1,153 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Events kept pre-sorted by date, by popularity and by price, plus a date-sorted list per category.
+// Every change costs a few binary searches, and the screen queries below just walk the right
+// ordering instead of filtering and sorting the whole catalogue.
+// Not thread safe: the repository only touches it on the event worker thread.
+public class EventIndex {
+
+    // Most booked first, then soonest
+    public static final Comparator<Event> BY_BOOKED_SEATS = (e1, e2) -> {
+        int result = Integer.compare(e2.getBookedSeats(), e1.getBookedSeats());
+        return result != 0 ? result : SortedEventList.BY_DATE.compare(e1, e2);
+    };
+
+    // Cheapest first, then soonest
+    public static final Comparator<Event> BY_PRICE = (e1, e2) -> {
+        int result = Double.compare(e1.getPrice(), e2.getPrice());
+        return result != 0 ? result : SortedEventList.BY_DATE.compare(e1, e2);
+    };
+
+    private final SortedEventList byDate = new SortedEventList(SortedEventList.BY_DATE);
+    private final SortedEventList byBookedSeats = new SortedEventList(BY_BOOKED_SEATS);
+    private final SortedEventList byPrice = new SortedEventList(BY_PRICE);
+    private final Map<String, SortedEventList> byCategory = new HashMap<>();
+
+    public void add(Event event) {
+        byDate.add(event);
+        byBookedSeats.add(event);
+        byPrice.add(event);
+        categoryList(event.getCategory()).add(event);
+    }
+
+    // The old instance is needed to find its positions, see SortedEventList.replace
+    public void replace(Event oldEvent, Event newEvent) {
+        if (oldEvent != null) {
+            remove(oldEvent);
+        }
+        add(newEvent);
+    }
+
+    public void remove(Event event) {
+        byDate.remove(event);
+        byBookedSeats.remove(event);
+        byPrice.remove(event);
+        SortedEventList list = byCategory.get(event.getCategory());
+        if (list != null) {
+            list.remove(event);
+        }
+    }
+
+    public int size() {
+        return byDate.size();
+    }
+
+    // All events sorted by date (live read-only view)
+    public List<Event> byDate() {
+        return byDate.asList();
+    }
+
+    // Most booked future events in the given categories
+    public List<Event> trending(Set<String> categories, long now, int limit) {
+        return firstMatches(byBookedSeats, categories, now, limit);
+    }
+
+    // Cheapest future events in the given categories
+    public List<Event> cheapest(Set<String> categories, long now, int limit) {
+        return firstMatches(byPrice, categories, now, limit);
+    }
+
+    // Future events of one category, soonest first
+    public List<Event> upcomingInCategory(String category, long now, int limit) {
+        SortedEventList list = byCategory.get(category);
+        if (list == null) return Collections.emptyList();
+
+        List<Event> result = new ArrayList<>();
+        for (int i = list.lowerBound(timeProbe(now)); i < list.size() && result.size() < limit; i++) {
+            result.add(list.get(i));
+        }
+        return result;
+    }
+
+    // Future events in the given categories, soonest first.
+    // Merges the per-category lists starting at "now", so past events and other categories are never visited.
+    public List<Event> upcoming(Set<String> categories, long now, int limit) {
+        List<SortedEventList> lists = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        Event probe = timeProbe(now);
+        for (String category : categories) {
+            SortedEventList list = byCategory.get(category);
+            if (list != null && list.size() > 0) {
+                lists.add(list);
+                positions.add(list.lowerBound(probe));
+            }
+        }
+
+        // Few categories, so a linear pick of the smallest head is cheaper than a heap
+        List<Event> result = new ArrayList<>();
+        while (result.size() < limit) {
+            int best = -1;
+            for (int i = 0; i < lists.size(); i++) {
+                int position = positions.get(i);
+                if (position >= lists.get(i).size()) continue;
+                if (best < 0 || SortedEventList.BY_DATE.compare(lists.get(i).get(position),
+                        lists.get(best).get(positions.get(best))) < 0) {
+                    best = i;
+                }
+            }
+            if (best < 0) break;
+            result.add(lists.get(best).get(positions.get(best)));
+            positions.set(best, positions.get(best) + 1);
+        }
+        return result;
+    }
+
+    private static List<Event> firstMatches(SortedEventList list, Set<String> categories,
+                                            long now, int limit) {
+        List<Event> result = new ArrayList<>();
+        for (int i = 0; i < list.size() && result.size() < limit; i++) {
+            Event event = list.get(i);
+            if (event.getDateTime() >= now && categories.contains(event.getCategory())) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    private SortedEventList categoryList(String category) {
+        SortedEventList list = byCategory.get(category);
+        if (list == null) {
+            list = new SortedEventList(SortedEventList.BY_DATE);
+            byCategory.put(category, list);
+        }
+        return list;
+    }
+
+    // Sorts before every real event at that time, since ids are never empty
+    private static Event timeProbe(long time) {
+        Event probe = new Event();
+        probe.setDateTime(time);
+        probe.setEventId("");
+        return probe;
+    }
+}
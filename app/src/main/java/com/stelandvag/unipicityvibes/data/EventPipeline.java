@@ -0,0 +1,86 @@
+package com.stelandvag.unipicityvibes.data;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs event processing on the shared event worker thread and posts the result to the main thread.
+// Every submit starts a new generation: work of an older generation that is still queued or running
+// gets cancelled and its result is never delivered.
+public class EventPipeline<T> {
+
+    // Single thread, so the repository state and the jobs reading it never race
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "event-worker");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    public interface Job<T> {
+        T run(Generation generation);
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    // Handle a job can poll inside long loops to stop early once it is stale
+    public static class Generation {
+        private final AtomicInteger current;
+        private final int id;
+
+        Generation(AtomicInteger current, int id) {
+            this.current = current;
+            this.id = id;
+        }
+
+        public boolean isCancelled() {
+            return current.get() != id || Thread.currentThread().isInterrupted();
+        }
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger generation = new AtomicInteger();
+    private final Callback<T> callback;
+    private Future<?> inFlight;
+
+    public EventPipeline(Callback<T> callback) {
+        this.callback = callback;
+    }
+
+    public static ExecutorService worker() {
+        return WORKER;
+    }
+
+    // Call from the main thread
+    public void submit(Job<T> job) {
+        Generation gen = new Generation(generation, generation.incrementAndGet());
+        if (inFlight != null) {
+            inFlight.cancel(false);
+        }
+        inFlight = WORKER.submit(() -> {
+            if (gen.isCancelled()) return;
+            T result = job.run(gen);
+            if (gen.isCancelled()) return;
+            mainHandler.post(() -> {
+                // A newer submit may have happened while this was queued on the main thread
+                if (!gen.isCancelled()) {
+                    callback.onResult(result);
+                }
+            });
+        });
+    }
+
+    // Drop any pending result, e.g. when the screen is destroyed
+    public void cancel() {
+        generation.incrementAndGet();
+        if (inFlight != null) {
+            inFlight.cancel(false);
+            inFlight = null;
+        }
+    }
+}
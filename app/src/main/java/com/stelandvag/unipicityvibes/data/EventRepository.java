@@ -0,0 +1,641 @@
+package com.stelandvag.unipicityvibes.data;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+import com.stelandvag.unipicityvibes.models.Event;
+import com.stelandvag.unipicityvibes.models.EventDisplayModel;
+import com.stelandvag.unipicityvibes.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Process-wide owner of the events subscription.
+// Every screen observes the same in-memory events instead of downloading the whole tree on its own.
+// Changes arrive one child at a time and are patched into the map and the EventIndex orderings,
+// so a single seat booked costs O(log n) instead of a full re-parse.
+// The last known events are kept in an EventStore so a cold start renders without the network.
+// Only events that have not ended are subscribed to (orderByChild("dateTime") window), plus an
+// optional bounded window for the calendar, so old events are never downloaded.
+// The map can instead load just the geohash tiles it shows (loadViewport), so opening it before
+// the window synced never downloads the whole catalogue.
+//
+// Threading: listeners are added and notified on the main thread. Parsing and all event state
+// live on the EventPipeline worker thread, so jobs submitted there can read it without locks.
+public class EventRepository {
+
+    // How long the store keeps events after they started
+    private static final long STORE_RETENTION_MS = 24 * 60 * 60 * 1000L;
+    // Changes are written to the store in batches at most this often
+    private static final long STORE_FLUSH_DELAY_MS = 1000;
+    // How often the upcoming window start is moved forward
+    private static final long WINDOW_SLIDE_INTERVAL_MS = 6 * 60 * 60 * 1000L;
+
+    private static EventRepository instance;
+
+    // Interface for screens that need the events
+    public interface Listener {
+        // The events changed. Nothing is copied per change, read them in an EventPipeline job
+        // through getIndex() and the other worker views.
+        void onEventsChanged();
+        void onEventsFailed(String message);
+    }
+
+    private final DatabaseReference eventsRef;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService worker = EventPipeline.worker();
+
+    // Main thread state
+    private final List<Listener> listeners = new ArrayList<>();
+    private int publishedCount = 0;
+    private boolean hasData = false;
+    private boolean subscribed = false;
+    private boolean storeRequested = false;
+    private boolean liveSynced = false;
+    // The store had events to show before the sync
+    private boolean storeFilled = false;
+    // Run once the upcoming window synced
+    private final List<Runnable> afterSync = new ArrayList<>();
+    private Query upcomingQuery;
+    private Query calendarQuery;
+
+    // Window bounds, written on the main thread. The worker reads upcomingStart when pruning.
+    private volatile long upcomingStart;
+    private long calendarStart;
+    private long calendarEnd;
+
+    // Worker thread state: events by id plus the derived views, patched in place.
+    // The map is concurrent so getEvent can be called from any thread.
+    private final Map<String, Event> eventsById = new ConcurrentHashMap<>();
+    private final EventIndex index = new EventIndex();
+    private final SpatialIndex spatialIndex = new SpatialIndex();
+    private final SearchIndex searchIndex = new SearchIndex();
+    // Formatted texts per event, rebuilt lazily when the event instance changes
+    private final Map<String, EventDisplayModel> displayModels = new HashMap<>();
+    private boolean loaded = false;
+    private boolean publishScheduled = false;
+    // Event id to the map tile that loaded it, so tile events outlive the windows
+    private final Map<String, String> tileOf = new HashMap<>();
+    // Ids seen from Firebase during the first sync, used to drop stale cached events
+    private Set<String> liveIds = new HashSet<>();
+
+    // Local copy, written on its own thread so disk I/O never delays parsing
+    private final EventStore store;
+    // Map tiles, main thread
+    private final TileCache tiles;
+    // Application context, for the display texts
+    private final Context context;
+    private final ExecutorService storeExecutor = Executors.newSingleThreadExecutor();
+    private final Map<String, Event> pendingUpserts = new HashMap<>();
+    private final Set<String> pendingRemovals = new HashSet<>();
+    private boolean flushScheduled = false;
+
+    private EventRepository(Context context) {
+        this.context = context;
+        eventsRef = FirebaseDatabase.getInstance(Constants.FIREBASE_DB_URL)
+                .getReference(Constants.EVENTS_REF);
+        store = new EventStore(context);
+        tiles = new TileCache(eventsRef, STORE_RETENTION_MS, tileCallback);
+    }
+
+    // Call from the main thread
+    public static EventRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new EventRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        addListener(listener, true);
+    }
+
+    // Without subscribe the listener only sees what other screens or loadViewport brought in
+    public void addListener(Listener listener, boolean subscribe) {
+        if (listeners.contains(listener)) return;
+        listeners.add(listener);
+
+        // Screens opened after the first load get the cached events right away
+        if (hasData) {
+            listener.onEventsChanged();
+        }
+        if (subscribe) {
+            subscribe();
+        } else {
+            loadFromStoreOnce();
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Number of events at the latest change (main thread)
+    public int getEventCount() {
+        return publishedCount;
+    }
+
+    // Sorted views of the current events. Worker thread only, e.g. from an EventPipeline job.
+    public EventIndex getIndex() {
+        return index;
+    }
+
+    // Event locations for radius and nearest searches. Worker thread only.
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    // Full-text index for the search box. Worker thread only.
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    // Display texts of an event, formatted at most once per change. Worker thread only.
+    public EventDisplayModel getDisplayModel(Event event) {
+        EventDisplayModel model = displayModels.get(event.getEventId());
+        if (model == null || !model.isCurrentFor(event)) {
+            model = EventDisplayModel.of(context, event);
+            displayModels.put(event.getEventId(), model);
+        }
+        return model;
+    }
+
+    // Worker thread only
+    public List<EventDisplayModel> getDisplayModels(List<Event> events) {
+        List<EventDisplayModel> models = new ArrayList<>(events.size());
+        for (Event event : events) {
+            models.add(getDisplayModel(event));
+        }
+        return Collections.unmodifiableList(models);
+    }
+
+    @Nullable
+    public Event getEvent(String eventId) {
+        return eventsById.get(eventId);
+    }
+
+    // Cached copy of one event without touching the network: memory first, then the store.
+    // The callback runs on the main thread with null when the event is not cached.
+    public void loadCachedEvent(String eventId, EventPipeline.Callback<Event> callback) {
+        Event event = eventsById.get(eventId);
+        if (event != null) {
+            callback.onResult(event);
+            return;
+        }
+        storeExecutor.execute(() -> {
+            Event stored = store.getEvent(eventId);
+            mainHandler.post(() -> callback.onResult(stored));
+        });
+    }
+
+    // Events from fromTime on around a point, e.g. for planning geofences. Once the upcoming
+    // window synced they come from memory within the radius, before that (or while the app is
+    // closed and nothing is in memory) from the store inside a box, callers filter by exact
+    // distance. The callback runs on the main thread.
+    public void loadAround(double lat, double lng, double radiusMeters, long fromTime,
+                           EventPipeline.Callback<List<Event>> callback) {
+        if (liveSynced) {
+            worker.execute(() -> {
+                List<Event> events = new ArrayList<>();
+                for (NearbyEvent item : spatialIndex.withinRadius(lat, lng, radiusMeters)) {
+                    if (item.event.getDateTime() >= fromTime) {
+                        events.add(item.event);
+                    }
+                }
+                mainHandler.post(() -> callback.onResult(events));
+            });
+            return;
+        }
+        double latSpan = radiusMeters / 111320.0;
+        double lngSpan = radiusMeters / (111320.0 * Math.max(Math.cos(Math.toRadians(lat)), 0.01));
+        storeExecutor.execute(() -> {
+            List<Event> events = new ArrayList<>();
+            for (Event event : store.loadInArea(lat - latSpan, lat + latSpan, lng - lngSpan, lng + lngSpan)) {
+                if (event.getDateTime() >= fromTime) {
+                    events.add(event);
+                }
+            }
+            mainHandler.post(() -> callback.onResult(events));
+        });
+    }
+
+    // Fetch just the events around a location with geohash range queries. It stands in for the
+    // window on the Near You row only while nothing else can fill it: on a first launch, before
+    // anything was stored and before the full sync arrived. Otherwise it would be a second
+    // download of events that are already on their way.
+    public void loadNearby(double lat, double lng, double radiusMeters) {
+        if (liveSynced || storeFilled) return;
+
+        new GeoQuery(eventsRef, lat, lng, radiusMeters).fetch(worker, new GeoQuery.Callback() {
+            @Override
+            public void onResult(List<NearbyEvent> nearby) {
+                if (loaded) return;
+                for (NearbyEvent item : nearby) {
+                    upsert(item.event);
+                }
+                publish();
+            }
+
+            @Override
+            public void onError(String message) {
+                // The full sync reports its own errors
+            }
+        });
+    }
+
+    // Load the events of the geohash tiles covering this box, e.g. the visible map region.
+    // Once the upcoming window synced every upcoming event is already in memory and live.
+    public void loadViewport(double south, double west, double north, double east) {
+        if (liveSynced) {
+            tiles.cancelAll();
+            return;
+        }
+        tiles.request(south, west, north, east);
+    }
+
+    // Whether the upcoming window synced and memory holds every upcoming event. Main thread.
+    public boolean isSynced() {
+        return liveSynced;
+    }
+
+    // Runs action on the main thread once the upcoming window synced, right away if it has.
+    // Never runs in a process where no screen subscribed, e.g. a broadcast receiver.
+    public void runAfterSync(Runnable action) {
+        if (liveSynced) {
+            action.run();
+        } else {
+            afterSync.add(action);
+        }
+    }
+
+    // Drop tile loads still in flight, e.g. when the map closes
+    public void cancelViewportLoads() {
+        tiles.cancelAll();
+    }
+
+    private final TileCache.Callback tileCallback = new TileCache.Callback() {
+        @Override
+        public void onTileLoaded(String cell, DataSnapshot snapshot) {
+            worker.execute(() -> applyTile(cell, snapshot));
+        }
+
+        @Override
+        public void onTileEvicted(String cell) {
+            worker.execute(() -> {
+                List<String> members = new ArrayList<>();
+                for (Map.Entry<String, String> entry : tileOf.entrySet()) {
+                    if (entry.getValue().equals(cell)) {
+                        members.add(entry.getKey());
+                    }
+                }
+                for (String eventId : members) {
+                    tileOf.remove(eventId);
+                    removeIfUnused(eventId);
+                }
+            });
+        }
+    };
+
+    // Worker thread. Replaces what the tile held, skipping events that already ended.
+    private void applyTile(String cell, DataSnapshot snapshot) {
+        long from = System.currentTimeMillis() - STORE_RETENTION_MS;
+        Set<String> current = new HashSet<>();
+        for (DataSnapshot child : snapshot.getChildren()) {
+            Event event = GeoQuery.parse(child);
+            if (event == null || event.getDateTime() < from) continue;
+            current.add(event.getEventId());
+            tileOf.put(event.getEventId(), cell);
+            upsert(event);
+        }
+
+        // Events deleted or moved away since the last load of this tile
+        List<String> gone = new ArrayList<>();
+        for (Map.Entry<String, String> entry : tileOf.entrySet()) {
+            if (entry.getValue().equals(cell) && !current.contains(entry.getKey())) {
+                gone.add(entry.getKey());
+            }
+        }
+        for (String eventId : gone) {
+            tileOf.remove(eventId);
+            removeIfUnused(eventId);
+        }
+        // The windows may not have synced, publish the tile anyway
+        publishLater();
+    }
+
+    // Also keep the events of [start, end) in memory, e.g. the months the calendar shows.
+    // Replaces the previous calendar window.
+    public void setCalendarWindow(long start, long end) {
+        if (calendarQuery != null && calendarStart == start && calendarEnd == end) return;
+        clearCalendarWindow();
+
+        calendarStart = start;
+        calendarEnd = end;
+        calendarQuery = eventsRef.orderByChild("dateTime").startAt(start).endAt(end - 1);
+        calendarQuery.addChildEventListener(calendarListener);
+    }
+
+    public void clearCalendarWindow() {
+        if (calendarQuery == null) return;
+        calendarQuery.removeEventListener(calendarListener);
+        calendarQuery = null;
+
+        // Events only that window held are no longer needed
+        worker.execute(() -> {
+            List<String> members = new ArrayList<>(calendarListener.members);
+            calendarListener.members.clear();
+            for (String eventId : members) {
+                removeIfUnused(eventId);
+            }
+        });
+    }
+
+    private void subscribe() {
+        if (subscribed) return;
+        subscribed = true;
+
+        loadFromStoreOnce();
+        attachUpcomingWindow();
+
+        // Child listeners have no "initial load done" callback. Value events fire after the
+        // child events of the same sync and share the listen above, so this marks the first load.
+        upcomingQuery.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                worker.execute(() -> onFirstSync());
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {}
+        });
+
+        mainHandler.removeCallbacks(slideWindow);
+        mainHandler.postDelayed(slideWindow, WINDOW_SLIDE_INTERVAL_MS);
+    }
+
+    // Only events that have not ended yet are downloaded, the past is never fetched again
+    private void attachUpcomingWindow() {
+        upcomingStart = System.currentTimeMillis() - STORE_RETENTION_MS;
+        upcomingQuery = eventsRef.orderByChild("dateTime").startAt(upcomingStart);
+        upcomingQuery.addChildEventListener(upcomingListener);
+    }
+
+    // Move the window start forward and drop the events that ended from memory. The query has
+    // no end, so every event after the new start is already synced by the listener attached
+    // first: it stays, re-attaching would download the whole window again. It still reports
+    // changes of the events that ended, the listener ignores those.
+    private final Runnable slideWindow = new Runnable() {
+        @Override
+        public void run() {
+            if (!subscribed) return;
+            upcomingStart = System.currentTimeMillis() - STORE_RETENTION_MS;
+            worker.execute(EventRepository.this::prunePastEvents);
+            mainHandler.postDelayed(this, WINDOW_SLIDE_INTERVAL_MS);
+        }
+    };
+
+    // Firebase calls back on the main thread, hand the snapshots straight to the worker
+    private final WindowListener upcomingListener = new WindowListener() {
+        @Override
+        long start() {
+            return upcomingStart;
+        }
+
+        @Override
+        public void onCancelled(@NonNull DatabaseError error) {
+            // Allow a later screen to try again
+            upcomingQuery.removeEventListener(this);
+            mainHandler.removeCallbacks(slideWindow);
+            subscribed = false;
+            for (Listener listener : new ArrayList<>(listeners)) {
+                listener.onEventsFailed(error.getMessage());
+            }
+        }
+    };
+
+    private final WindowListener calendarListener = new WindowListener() {
+        @Override
+        public void onCancelled(@NonNull DatabaseError error) {
+            for (Listener listener : new ArrayList<>(listeners)) {
+                listener.onEventsFailed(error.getMessage());
+            }
+        }
+    };
+
+    // Patches the shared events from one time window query and remembers which ids it holds,
+    // so an event is only dropped once no window holds it any more
+    private abstract class WindowListener implements ChildEventListener {
+
+        // Worker thread
+        final Set<String> members = new HashSet<>();
+
+        // Events before this are no longer part of the window, even if the query still has them
+        long start() {
+            return Long.MIN_VALUE;
+        }
+
+        @Override
+        public void onChildAdded(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+            worker.execute(() -> apply(snapshot));
+        }
+
+        @Override
+        public void onChildChanged(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+            worker.execute(() -> apply(snapshot));
+        }
+
+        // Worker thread
+        private void apply(DataSnapshot snapshot) {
+            Event event = GeoQuery.parse(snapshot);
+            if (event == null) return;
+            if (event.getDateTime() < start()) {
+                members.remove(event.getEventId());
+                removeIfUnused(event.getEventId());
+                return;
+            }
+            members.add(event.getEventId());
+            upsert(event);
+        }
+
+        @Override
+        public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+            String eventId = snapshot.getKey();
+            worker.execute(() -> {
+                members.remove(eventId);
+                removeIfUnused(eventId);
+            });
+        }
+
+        @Override
+        public void onChildMoved(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+            // Order is kept locally, the server order does not matter
+        }
+    }
+
+    // Worker thread
+    private void removeIfUnused(String eventId) {
+        if (!upcomingListener.members.contains(eventId) && !calendarListener.members.contains(eventId)
+                && !tileOf.containsKey(eventId)) {
+            remove(eventId);
+        }
+    }
+
+    // Worker thread. Drops events that ended before the window start and are not in the calendar.
+    private void prunePastEvents() {
+        long start = upcomingStart;
+        List<String> past = new ArrayList<>();
+        for (Event event : index.byDate()) {
+            if (event.getDateTime() >= start) break;
+            past.add(event.getEventId());
+        }
+        for (String eventId : past) {
+            upcomingListener.members.remove(eventId);
+            tileOf.remove(eventId);
+            removeIfUnused(eventId);
+        }
+    }
+
+    // Worker thread
+    private void onFirstSync() {
+        // Events deleted while the app was closed are still in the cache
+        if (liveIds != null) {
+            for (String eventId : new ArrayList<>(eventsById.keySet())) {
+                if (!liveIds.contains(eventId) && !tileOf.containsKey(eventId)) {
+                    remove(eventId);
+                }
+            }
+            liveIds = null;
+        }
+
+        loaded = true;
+        mainHandler.post(() -> {
+            liveSynced = true;
+            List<Runnable> actions = new ArrayList<>(afterSync);
+            afterSync.clear();
+            for (Runnable action : actions) {
+                action.run();
+            }
+        });
+        schedulePublish();
+    }
+
+    // Worker thread
+    private void upsert(Event event) {
+        if (liveIds != null) {
+            liveIds.add(event.getEventId());
+        }
+
+        Event old = eventsById.put(event.getEventId(), event);
+        index.replace(old, event);
+        spatialIndex.replace(old, event);
+        searchIndex.replace(old, event);
+        schedulePublish();
+
+        pendingRemovals.remove(event.getEventId());
+        pendingUpserts.put(event.getEventId(), event);
+        scheduleFlush();
+    }
+
+    // Worker thread
+    private void remove(String eventId) {
+        Event removed = eventsById.remove(eventId);
+        if (removed == null) return;
+        displayModels.remove(eventId);
+        index.remove(removed);
+        spatialIndex.remove(removed);
+        searchIndex.remove(removed);
+        schedulePublish();
+
+        pendingUpserts.remove(eventId);
+        pendingRemovals.add(eventId);
+        scheduleFlush();
+    }
+
+    // Show the stored events until the first Firebase sync arrives
+    private void loadFromStoreOnce() {
+        if (storeRequested) return;
+        storeRequested = true;
+        long from = System.currentTimeMillis() - STORE_RETENTION_MS;
+        storeExecutor.execute(() -> {
+            store.deleteOlderThan(from);
+            List<Event> cached = store.loadUpcoming(from);
+            worker.execute(() -> {
+                if (loaded || cached.isEmpty()) return;
+                mainHandler.post(() -> storeFilled = true);
+                for (Event event : cached) {
+                    // Live data may already have replaced some of them
+                    if (!eventsById.containsKey(event.getEventId())) {
+                        eventsById.put(event.getEventId(), event);
+                        index.add(event);
+                        spatialIndex.add(event);
+                        searchIndex.add(event);
+                    }
+                }
+                publish();
+            });
+        });
+    }
+
+    // Worker thread
+    private void scheduleFlush() {
+        if (flushScheduled) return;
+        flushScheduled = true;
+        mainHandler.postDelayed(() -> worker.execute(() -> {
+            flushScheduled = false;
+            List<Event> upserts = new ArrayList<>(pendingUpserts.values());
+            List<String> removals = new ArrayList<>(pendingRemovals);
+            pendingUpserts.clear();
+            pendingRemovals.clear();
+            storeExecutor.execute(() -> store.apply(upserts, removals));
+        }), STORE_FLUSH_DELAY_MS);
+    }
+
+    // Worker thread. A burst of child callbacks (e.g. the initial load) results in one
+    // notification: the publish is queued behind everything the main thread handed over so far.
+    private void schedulePublish() {
+        if (loaded) {
+            publishLater();
+        }
+    }
+
+    // Worker thread
+    private void publishLater() {
+        if (publishScheduled) return;
+        publishScheduled = true;
+        mainHandler.post(() -> worker.execute(() -> {
+            publishScheduled = false;
+            publish();
+        }));
+    }
+
+    // Worker thread
+    private void publish() {
+        int count = index.size();
+        mainHandler.post(() -> {
+            publishedCount = count;
+            hasData = true;
+            for (Listener listener : new ArrayList<>(listeners)) {
+                listener.onEventsChanged();
+            }
+        });
+    }
+}
@@ -0,0 +1,172 @@
+package com.stelandvag.unipicityvibes.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.Nullable;
+
+import com.stelandvag.unipicityvibes.models.Event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// On-device copy of the last known events, so screens can render before Firebase answers.
+// All methods do disk I/O and must be called off the main thread.
+public class EventStore extends SQLiteOpenHelper {
+
+    private static final String DB_NAME = "events.db";
+    private static final int DB_VERSION = 4;
+
+    private static final String TABLE_EVENTS = "events";
+    private static final String COLUMNS = "event_id, title, description, category, date_time, price, "
+            + "venue, latitude, longitude, capacity, booked_seats, image_url, seat_shards";
+
+    public EventStore(Context context) {
+        super(context.getApplicationContext(), DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_EVENTS + " ("
+                + "event_id TEXT PRIMARY KEY, "
+                + "title TEXT, "
+                + "description TEXT, "
+                + "category TEXT, "
+                + "date_time INTEGER NOT NULL, "
+                + "price REAL, "
+                + "venue TEXT, "
+                + "latitude REAL, "
+                + "longitude REAL, "
+                + "capacity INTEGER, "
+                + "booked_seats INTEGER, "
+                + "image_url TEXT, "
+                + "seat_shards INTEGER)");
+
+        // Indexes for the queries the screens make
+        db.execSQL("CREATE INDEX idx_events_date ON " + TABLE_EVENTS + " (date_time)");
+        createCategoryIndex(db);
+        db.execSQL("CREATE INDEX idx_events_location ON " + TABLE_EVENTS + " (latitude, longitude)");
+    }
+
+    private static void createCategoryIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_events_category ON " + TABLE_EVENTS
+                + " (category, date_time)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion == 3) {
+            // Same table, only the category index was missing
+            createCategoryIndex(db);
+            return;
+        }
+        // The table is only a cache, rebuild it from the next sync
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_EVENTS);
+        onCreate(db);
+    }
+
+    // Events from the given time on, sorted by date
+    public List<Event> loadUpcoming(long fromTime) {
+        return query("SELECT " + COLUMNS + " FROM " + TABLE_EVENTS
+                + " WHERE date_time >= ? ORDER BY date_time", String.valueOf(fromTime));
+    }
+
+    public List<Event> loadByCategory(String category, long fromTime) {
+        return query("SELECT " + COLUMNS + " FROM " + TABLE_EVENTS
+                        + " WHERE category = ? AND date_time >= ? ORDER BY date_time",
+                category, String.valueOf(fromTime));
+    }
+
+    // Rough bounding box lookup, callers filter by exact distance
+    public List<Event> loadInArea(double minLat, double maxLat, double minLng, double maxLng) {
+        return query("SELECT " + COLUMNS + " FROM " + TABLE_EVENTS
+                        + " WHERE latitude BETWEEN ? AND ? AND longitude BETWEEN ? AND ?",
+                String.valueOf(minLat), String.valueOf(maxLat),
+                String.valueOf(minLng), String.valueOf(maxLng));
+    }
+
+    @Nullable
+    public Event getEvent(String eventId) {
+        List<Event> result = query("SELECT " + COLUMNS + " FROM " + TABLE_EVENTS
+                + " WHERE event_id = ?", eventId);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    // Writes a batch of changes in one transaction
+    public void apply(Collection<Event> upserted, Collection<String> removedIds) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_EVENTS
+                    + " (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            for (Event event : upserted) {
+                insert.clearBindings();
+                insert.bindString(1, event.getEventId());
+                bindNullable(insert, 2, event.getTitle());
+                bindNullable(insert, 3, event.getDescription());
+                bindNullable(insert, 4, event.getCategory());
+                insert.bindLong(5, event.getDateTime());
+                insert.bindDouble(6, event.getPrice());
+                bindNullable(insert, 7, event.getVenue());
+                insert.bindDouble(8, event.getLatitude());
+                insert.bindDouble(9, event.getLongitude());
+                insert.bindLong(10, event.getCapacity());
+                insert.bindLong(11, event.getBookedSeats());
+                bindNullable(insert, 12, event.getImageUrl());
+                insert.bindLong(13, event.getSeatShards());
+                insert.executeInsert();
+            }
+
+            for (String eventId : removedIds) {
+                db.delete(TABLE_EVENTS, "event_id = ?", new String[]{eventId});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Drop events that ended before the given time
+    public void deleteOlderThan(long time) {
+        getWritableDatabase().delete(TABLE_EVENTS, "date_time < ?",
+                new String[]{String.valueOf(time)});
+    }
+
+    private List<Event> query(String sql, String... args) {
+        List<Event> events = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, args)) {
+            while (cursor.moveToNext()) {
+                Event event = new Event(
+                        cursor.getString(0),
+                        cursor.getString(1),
+                        cursor.getString(2),
+                        cursor.getString(3),
+                        cursor.getLong(4),
+                        cursor.getDouble(5),
+                        cursor.getString(6),
+                        cursor.getDouble(7),
+                        cursor.getDouble(8),
+                        cursor.getInt(9),
+                        cursor.getInt(10),
+                        cursor.getString(11)
+                );
+                event.setSeatShards(cursor.getInt(12));
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.stelandvag.unipicityvibes.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.ServerValue;
+import com.google.firebase.database.Transaction;
+import com.google.firebase.database.ValueEventListener;
+import com.stelandvag.unipicityvibes.models.Event;
+import com.stelandvag.unipicityvibes.models.Reservation;
+import com.stelandvag.unipicityvibes.utils.Constants;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Booking steps on the Realtime Database. The key claim and the seat counter are transactions,
+// so the server retries them on conflict instead of letting a stale local count win.
+public class FirebaseBookingBackend implements BookingBackend {
+
+    private static final long CLAIM_TIMEOUT_MS = 2 * 60 * 1000;
+
+    // Seat counters, eventSeats/{eventId} for an unsharded event and seatShards/{eventId}/{shard}
+    // for a shard, each {capacity, booked, holders/{uid}}. They live outside the event node, so
+    // a transaction only downloads the counter and event listeners don't see every booking.
+    // The holders are seat marks of bookings not committed yet; only signed-in users can read
+    // them and each user can only mark seats with their own id (database.rules.json).
+    private static final String CAPACITY = "capacity";
+    private static final String BOOKED = "booked";
+    private static final String HOLDERS = "holders";
+
+    private final DatabaseReference rootRef;
+
+    public FirebaseBookingBackend() {
+        rootRef = FirebaseDatabase.getInstance(Constants.FIREBASE_DB_URL).getReference();
+    }
+
+    // The per-user reservation index doubles as the idempotency key:
+    // a timestamp while the booking is in flight, the reservation id once committed
+    private DatabaseReference keyRef(String eventId, String userId) {
+        return rootRef.child(Constants.USER_RESERVATIONS_REF).child(userId).child(eventId);
+    }
+
+    @Override
+    public void claimKey(String eventId, String userId, Callback<Claim> callback) {
+        // Set by the last run of doTransaction, the one that committed
+        boolean[] tookOver = {false};
+        keyRef(eventId, userId).runTransaction(new Transaction.Handler() {
+            @NonNull
+            @Override
+            public Transaction.Result doTransaction(@NonNull MutableData currentData) {
+                // A placeholder older than the timeout belongs to a booking that never finished,
+                // e.g. the app was killed mid-way, and may be taken over by the replay
+                Object value = currentData.getValue();
+                tookOver[0] = value instanceof Number
+                        && System.currentTimeMillis() - ((Number) value).longValue() > CLAIM_TIMEOUT_MS;
+                if (value != null && !tookOver[0]) {
+                    return Transaction.abort();
+                }
+                // Placeholder until the reservation id is written on commit
+                currentData.setValue(System.currentTimeMillis());
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(@Nullable DatabaseError error, boolean committed,
+                                   @Nullable DataSnapshot currentData) {
+                if (error != null) {
+                    callback.onFailure(error.getMessage());
+                } else if (committed) {
+                    callback.onSuccess(tookOver[0] ? Claim.TAKEN_OVER : Claim.CLAIMED);
+                } else if (currentData != null && currentData.getValue() instanceof String) {
+                    callback.onSuccess(Claim.BOOKED);
+                } else {
+                    // A fresh placeholder, the other attempt is still running
+                    callback.onSuccess(Claim.IN_PROGRESS);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void releaseKey(String eventId, String userId) {
+        keyRef(eventId, userId).removeValue();
+    }
+
+    @Override
+    public void setUpSeats(String eventId, Callback<Void> callback) {
+        rootRef.child(Constants.EVENTS_REF).child(eventId).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                Event event = snapshot.getValue(Event.class);
+                if (event == null) {
+                    callback.onFailure("Event not found");
+                    return;
+                }
+                // Seats booked before the counters existed are counted on the event
+                Object counters;
+                DatabaseReference ref;
+                if (event.getSeatShards() > 1) {
+                    counters = shardCounters(event);
+                    ref = rootRef.child(Constants.SEAT_SHARDS_REF).child(eventId);
+                } else {
+                    counters = counter(event.getCapacity(), event.getBookedSeats());
+                    ref = seatsRef(eventId);
+                }
+                ref.runTransaction(new Transaction.Handler() {
+                    @NonNull
+                    @Override
+                    public Transaction.Result doTransaction(@NonNull MutableData currentData) {
+                        if (currentData.getValue() != null) {
+                            // Another device set it up first
+                            return Transaction.abort();
+                        }
+                        currentData.setValue(counters);
+                        return Transaction.success(currentData);
+                    }
+
+                    @Override
+                    public void onComplete(@Nullable DatabaseError error, boolean committed,
+                                           @Nullable DataSnapshot currentData) {
+                        if (error != null) {
+                            callback.onFailure(error.getMessage());
+                        } else {
+                            callback.onSuccess(null);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                callback.onFailure(error.getMessage());
+            }
+        });
+    }
+
+    // All shards in one value, so they appear together. Only the seats left are split, the
+    // ones already booked stay counted on the event.
+    private static Map<String, Object> shardCounters(Event event) {
+        int seatsLeft = Math.max(0, event.getAvailableSeats());
+        Map<String, Object> shards = new HashMap<>();
+        for (int shard = 0; shard < event.getSeatShards(); shard++) {
+            shards.put(String.valueOf(shard),
+                    counter(BookingService.shardCapacity(seatsLeft, event.getSeatShards(), shard), 0));
+        }
+        return shards;
+    }
+
+    private static Map<String, Object> counter(int capacity, int booked) {
+        Map<String, Object> counter = new HashMap<>();
+        counter.put(CAPACITY, capacity);
+        counter.put(BOOKED, booked);
+        return counter;
+    }
+
+    @Override
+    public void incrementSeats(String eventId, String userId, Callback<Integer> callback) {
+        seatsRef(eventId).runTransaction(takeSeat(userId, callback));
+    }
+
+    @Override
+    public void releaseHeldSeat(String eventId, String userId, Callback<Void> callback) {
+        seatsRef(eventId).runTransaction(releaseHeld(userId, callback));
+    }
+
+    @Override
+    public void incrementShard(String eventId, int shard, String userId, Callback<Integer> callback) {
+        shardRef(eventId, shard).runTransaction(takeSeat(userId, callback));
+    }
+
+    @Override
+    public void releaseHeldShardSeat(String eventId, int shard, String userId, Callback<Void> callback) {
+        shardRef(eventId, shard).runTransaction(releaseHeld(userId, callback));
+    }
+
+    // Takes a seat on a counter node, NOT_SET_UP when the node does not exist
+    private static Transaction.Handler takeSeat(String userId, Callback<Integer> callback) {
+        return new Transaction.Handler() {
+            @NonNull
+            @Override
+            public Transaction.Result doTransaction(@NonNull MutableData currentData) {
+                // The first run may see an empty local cache, the server then re-runs it with real data
+                if (currentData.getValue() == null) {
+                    return Transaction.success(currentData);
+                }
+
+                MutableData holder = currentData.child(HOLDERS).child(userId);
+                if (holder.getValue() != null) {
+                    // Seat taken by an earlier attempt that never committed, keep it
+                    return Transaction.success(currentData);
+                }
+                // Capacity is read in the same transaction, never from the local copy
+                long capacity = longValue(currentData.child(CAPACITY));
+                long booked = longValue(currentData.child(BOOKED));
+                if (booked >= capacity) {
+                    return Transaction.abort();
+                }
+                currentData.child(BOOKED).setValue(booked + 1);
+                holder.setValue(true);
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(@Nullable DatabaseError error, boolean committed,
+                                   @Nullable DataSnapshot currentData) {
+                if (error != null) {
+                    callback.onFailure(error.getMessage());
+                } else if (currentData == null || !currentData.exists()) {
+                    callback.onSuccess(NOT_SET_UP);
+                } else if (!committed) {
+                    callback.onSuccess(SOLD_OUT);
+                } else {
+                    Long booked = currentData.child(BOOKED).getValue(Long.class);
+                    callback.onSuccess(booked == null ? 0 : booked.intValue());
+                }
+            }
+        };
+    }
+
+    // Removes the user's seat mark and the seat it stands for in one transaction on the counter node.
+    // Nothing to do when there is no mark, e.g. the abandoned booking never got a seat.
+    private static Transaction.Handler releaseHeld(String userId, Callback<Void> callback) {
+        return new Transaction.Handler() {
+            @NonNull
+            @Override
+            public Transaction.Result doTransaction(@NonNull MutableData currentData) {
+                if (currentData.getValue() == null) {
+                    return Transaction.success(currentData);
+                }
+                MutableData holder = currentData.child(HOLDERS).child(userId);
+                if (holder.getValue() == null) {
+                    return Transaction.abort();
+                }
+                holder.setValue(null);
+                long booked = longValue(currentData.child(BOOKED));
+                currentData.child(BOOKED).setValue(Math.max(0, booked - 1));
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(@Nullable DatabaseError error, boolean committed,
+                                   @Nullable DataSnapshot currentData) {
+                if (error != null) {
+                    callback.onFailure(error.getMessage());
+                } else {
+                    callback.onSuccess(null);
+                }
+            }
+        };
+    }
+
+    private DatabaseReference seatsRef(String eventId) {
+        return rootRef.child(Constants.EVENT_SEATS_REF).child(eventId);
+    }
+
+    private DatabaseReference shardRef(String eventId, int shard) {
+        return rootRef.child(Constants.SEAT_SHARDS_REF).child(eventId).child(String.valueOf(shard));
+    }
+
+    @Override
+    public void commitReservation(Reservation reservation, boolean sharded, Callback<Void> callback) {
+        // Reservation, its user index entry and the end of the seat mark in one multi-path update
+        String eventId = reservation.getEventId();
+        String userId = reservation.getUserId();
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(Constants.RESERVATIONS_REF + "/" + reservation.getReservationId(), reservation);
+        updates.put(Constants.USER_RESERVATIONS_REF + "/" + userId + "/" + eventId,
+                reservation.getReservationId());
+        if (sharded) {
+            updates.put(Constants.SEAT_SHARDS_REF + "/" + eventId + "/" + reservation.getSeatShard()
+                    + "/" + HOLDERS + "/" + userId, null);
+        } else {
+            updates.put(Constants.EVENT_SEATS_REF + "/" + eventId + "/" + HOLDERS + "/" + userId, null);
+        }
+        // Committed seats on the event itself, for the lists, trending and the seats left
+        updates.put(Constants.EVENTS_REF + "/" + eventId + "/bookedSeats", ServerValue.increment(1));
+
+        rootRef.updateChildren(updates)
+                .addOnSuccessListener(aVoid -> callback.onSuccess(null))
+                .addOnFailureListener(e -> callback.onFailure(e.getMessage()));
+    }
+
+    @Override
+    public void removeReservation(Reservation reservation, boolean sharded, Callback<Boolean> callback) {
+        // The rules only allow deleting a reservation that exists, which rejects the whole
+        // multi-path write once it is gone, seat increments included
+        String eventId = reservation.getEventId();
+        String userId = reservation.getUserId();
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(Constants.RESERVATIONS_REF + "/" + reservation.getReservationId(), null);
+        updates.put(Constants.USER_RESERVATIONS_REF + "/" + userId + "/" + eventId, null);
+        if (sharded) {
+            updates.put(Constants.SEAT_SHARDS_REF + "/" + eventId + "/" + reservation.getSeatShard()
+                    + "/" + BOOKED, ServerValue.increment(-1));
+        } else {
+            updates.put(Constants.EVENT_SEATS_REF + "/" + eventId + "/" + BOOKED, ServerValue.increment(-1));
+        }
+        updates.put(Constants.EVENTS_REF + "/" + eventId + "/bookedSeats", ServerValue.increment(-1));
+
+        rootRef.updateChildren(updates)
+                .addOnSuccessListener(aVoid -> callback.onSuccess(true))
+                .addOnFailureListener(e -> keyRef(eventId, userId).addListenerForSingleValueEvent(
+                        new ValueEventListener() {
+                            @Override
+                            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                                // The index no longer points at this reservation: cancelled before
+                                if (!reservation.getReservationId().equals(snapshot.getValue())) {
+                                    callback.onSuccess(false);
+                                } else {
+                                    callback.onFailure(e.getMessage());
+                                }
+                            }
+
+                            @Override
+                            public void onCancelled(@NonNull DatabaseError error) {
+                                callback.onFailure(e.getMessage());
+                            }
+                        }));
+    }
+
+    private static long longValue(MutableData data) {
+        Object value = data.getValue();
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
@@ -0,0 +1,99 @@
+package com.stelandvag.unipicityvibes.data;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+import com.stelandvag.unipicityvibes.models.Event;
+import com.stelandvag.unipicityvibes.utils.GeoHash;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Fetches only the events around a point, using a few geohash range queries instead of the whole tree.
+// Needs ".indexOn": ["geohash"] on the events node in the database rules.
+// Snapshots are parsed on the given executor, never on the main thread.
+public class GeoQuery {
+
+    public interface Callback {
+        // Events inside the radius, closest first (on the executor)
+        void onResult(List<NearbyEvent> events);
+        // Main thread
+        void onError(String message);
+    }
+
+    private final DatabaseReference eventsRef;
+    private final double lat;
+    private final double lng;
+    private final double radiusMeters;
+
+    public GeoQuery(DatabaseReference eventsRef, double lat, double lng, double radiusMeters) {
+        this.eventsRef = eventsRef;
+        this.lat = lat;
+        this.lng = lng;
+        this.radiusMeters = radiusMeters;
+    }
+
+    // One query per covering cell, results are merged once all of them answered.
+    // merged and remaining are only touched on the executor, failed is set on the main thread
+    // and read on the executor.
+    public void fetch(Executor executor, Callback callback) {
+        List<String[]> ranges = GeoHash.queryRanges(lat, lng, radiusMeters);
+        Map<String, Event> merged = new HashMap<>();
+        int[] remaining = {ranges.size()};
+        AtomicBoolean failed = new AtomicBoolean();
+
+        for (String[] range : ranges) {
+            eventsRef.orderByChild("geohash").startAt(range[0]).endAt(range[1])
+                    .addListenerForSingleValueEvent(new ValueEventListener() {
+                        @Override
+                        public void onDataChange(@NonNull DataSnapshot snapshot) {
+                            executor.execute(() -> {
+                                for (DataSnapshot eventSnapshot : snapshot.getChildren()) {
+                                    merged.put(eventSnapshot.getKey(), parse(eventSnapshot));
+                                }
+                                if (--remaining[0] == 0 && !failed.get()) {
+                                    callback.onResult(filterByDistance(merged.values()));
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void onCancelled(@NonNull DatabaseError error) {
+                            if (failed.compareAndSet(false, true)) {
+                                callback.onError(error.getMessage());
+                            }
+                        }
+                    });
+        }
+    }
+
+    static Event parse(DataSnapshot snapshot) {
+        Event event = snapshot.getValue(Event.class);
+        if (event != null) {
+            event.setEventId(snapshot.getKey());
+        }
+        return event;
+    }
+
+    // Cells are squares, drop what falls in their corners outside the circle
+    private List<NearbyEvent> filterByDistance(Iterable<Event> events) {
+        List<NearbyEvent> result = new ArrayList<>();
+        for (Event event : events) {
+            if (event == null) continue;
+            float distance = SpatialIndex.distanceMeters(lat, lng, event.getLatitude(), event.getLongitude());
+            if (distance <= radiusMeters) {
+                result.add(new NearbyEvent(event, distance));
+            }
+        }
+        Collections.sort(result, (n1, n2) -> Float.compare(n1.distanceMeters, n2.distanceMeters));
+        return result;
+    }
+}
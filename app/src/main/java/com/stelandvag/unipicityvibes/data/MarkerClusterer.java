@@ -0,0 +1,133 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Grid clustering of the events in the visible part of the map.
+// Only events inside the viewport plus a margin are looked at (through the SpatialIndex grid),
+// and those are merged per grid cell of about CELL_DP on screen, so the number of markers
+// depends on the screen size rather than on the catalogue size.
+// Worker thread only, like the SpatialIndex it reads.
+public final class MarkerClusterer {
+
+    // On-screen width of a cluster cell
+    private static final int CELL_DP = 96;
+    // Extra area around the viewport, as a share of its size, so a short pan finds markers in place
+    private static final double MARGIN = 0.25;
+    // From this zoom on every event gets its own marker
+    public static final int MAX_CLUSTER_ZOOM = 17;
+
+    // One marker: a single event or a group of nearby ones
+    public static final class Cluster {
+        // Stable while panning, so unchanged markers can be kept
+        public final String key;
+        public final double latitude;
+        public final double longitude;
+        public final List<Event> events;
+        public final double south, west, north, east;
+
+        Cluster(String key, List<Event> events) {
+            this.key = key;
+            this.events = Collections.unmodifiableList(events);
+            double latSum = 0, lngSum = 0;
+            double s = 90, w = 180, n = -90, e = -180;
+            for (Event event : events) {
+                latSum += event.getLatitude();
+                lngSum += event.getLongitude();
+                s = Math.min(s, event.getLatitude());
+                n = Math.max(n, event.getLatitude());
+                w = Math.min(w, event.getLongitude());
+                e = Math.max(e, event.getLongitude());
+            }
+            latitude = latSum / events.size();
+            longitude = lngSum / events.size();
+            south = s;
+            west = w;
+            north = n;
+            east = e;
+        }
+
+        public boolean isSingle() {
+            return events.size() == 1;
+        }
+
+        public Event first() {
+            return events.get(0);
+        }
+    }
+
+    private MarkerClusterer() {}
+
+    public static List<Cluster> cluster(SpatialIndex index, double south, double west, double north,
+                                        double east, float zoom, EventPipeline.Generation generation) {
+        // Viewport plus margin, clamped to the map
+        double latMargin = (north - south) * MARGIN;
+        double lngSpan = west <= east ? east - west : east + 360 - west;
+        double lngMargin = lngSpan * MARGIN;
+        double s = Math.max(-90, south - latMargin);
+        double n = Math.min(90, north + latMargin);
+
+        List<Event> visible = new ArrayList<>();
+        if (lngSpan + 2 * lngMargin >= 360) {
+            index.collectInBounds(s, -180, n, 180, visible);
+        } else {
+            double w = west - lngMargin;
+            double e = west + lngSpan + lngMargin;
+            // Split boxes that cross the 180th meridian
+            if (w < -180) {
+                index.collectInBounds(s, w + 360, n, 180, visible);
+                index.collectInBounds(s, -180, n, e, visible);
+            } else if (e > 180) {
+                index.collectInBounds(s, w, n, 180, visible);
+                index.collectInBounds(s, -180, n, e - 360, visible);
+            } else {
+                index.collectInBounds(s, w, n, e, visible);
+            }
+        }
+
+        List<Cluster> clusters = new ArrayList<>();
+        int level = (int) Math.floor(zoom);
+        if (level >= MAX_CLUSTER_ZOOM) {
+            for (Event event : visible) {
+                clusters.add(single(event));
+            }
+            return clusters;
+        }
+
+        // The world is 256 dp wide at zoom 0. Whole zoom levels keep the grid, and with it
+        // the cluster keys, fixed while panning.
+        double cellDegrees = 360.0 / (256 * Math.pow(2, level)) * CELL_DP;
+        Map<Long, List<Event>> cells = new HashMap<>();
+        for (Event event : visible) {
+            if (generation.isCancelled()) return clusters;
+            long key = ((long) Math.floor(event.getLatitude() / cellDegrees) << 32)
+                    | ((long) Math.floor(event.getLongitude() / cellDegrees) & 0xffffffffL);
+            List<Event> cell = cells.get(key);
+            if (cell == null) {
+                cell = new ArrayList<>(2);
+                cells.put(key, cell);
+            }
+            cell.add(event);
+        }
+
+        for (Map.Entry<Long, List<Event>> entry : cells.entrySet()) {
+            List<Event> events = entry.getValue();
+            clusters.add(events.size() == 1
+                    ? single(events.get(0))
+                    : new Cluster(level + ":" + entry.getKey(), events));
+        }
+        return clusters;
+    }
+
+    // Keyed by event, so a marker survives a zoom change that leaves the event on its own
+    private static Cluster single(Event event) {
+        List<Event> events = new ArrayList<>(1);
+        events.add(event);
+        return new Cluster("e:" + event.getEventId(), events);
+    }
+}
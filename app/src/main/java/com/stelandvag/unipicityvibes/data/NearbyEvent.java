@@ -0,0 +1,14 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+
+// An event together with its distance from the location it was searched around
+public class NearbyEvent {
+    public final Event event;
+    public final float distanceMeters;
+
+    public NearbyEvent(Event event, float distanceMeters) {
+        this.event = event;
+        this.distanceMeters = distanceMeters;
+    }
+}
@@ -0,0 +1,181 @@
+package com.stelandvag.unipicityvibes.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import com.stelandvag.unipicityvibes.utils.Constants;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Events the user was already notified about, so each one is announced once.
+// An entry only matters until its event is over, so it expires a day after the event starts
+// and the table stays as small as the set of upcoming events.
+// Read from disk once per process on a background thread, started by the first getInstance,
+// then checked in memory. A lookup that comes before the read finished waits for it, so call
+// the lookups off the main thread. New entries are written in batches on a background thread,
+// flushNow writes them at once for callers about to let the process die.
+// Thread safe.
+public class NotifiedEventStore extends SQLiteOpenHelper {
+
+    private static final String DB_NAME = "notified_events.db";
+    private static final int DB_VERSION = 1;
+    private static final String TABLE_NOTIFIED = "notified";
+
+    private static final long EXPIRY_AFTER_START_MS = 24 * 60 * 60 * 1000L;
+    private static final long FLUSH_DELAY_MS = 2000;
+    // The old StringSet had no dates, its ids are kept this long instead
+    private static final long MIGRATED_EXPIRY_MS = 7 * 24 * 60 * 60 * 1000L;
+    private static final String LEGACY_PREF_NOTIFIED_EVENTS = "notified_events";
+
+    private static NotifiedEventStore instance;
+
+    private final SharedPreferences prefs;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+
+    // Guarded by this
+    private Map<String, Long> expiryById;
+    private final Map<String, Long> pendingWrites = new HashMap<>();
+    private boolean pendingClear = false;
+    private boolean flushScheduled = false;
+
+    private NotifiedEventStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+        prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized NotifiedEventStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new NotifiedEventStore(context.getApplicationContext());
+            instance.writer.execute(instance::preload);
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_NOTIFIED + " ("
+                + "event_id TEXT PRIMARY KEY, "
+                + "expires_at INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Losing the rows only risks a repeated notification, rebuild the table
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NOTIFIED);
+        onCreate(db);
+    }
+
+    private synchronized void preload() {
+        entries();
+    }
+
+    public synchronized boolean isNotified(String eventId) {
+        Long expiresAt = entries().get(eventId);
+        return expiresAt != null && expiresAt > System.currentTimeMillis();
+    }
+
+    public synchronized void markNotified(String eventId, long eventDateTime) {
+        long expiresAt = eventDateTime + EXPIRY_AFTER_START_MS;
+        entries().put(eventId, expiresAt);
+        pendingWrites.put(eventId, expiresAt);
+        scheduleFlush();
+    }
+
+    public synchronized void clear() {
+        entries().clear();
+        pendingWrites.clear();
+        pendingClear = true;
+        scheduleFlush();
+    }
+
+    // The first call reads the table (normally preload on the writer thread), expired rows are
+    // left out and deleted with the next flush
+    private Map<String, Long> entries() {
+        if (expiryById != null) return expiryById;
+
+        long now = System.currentTimeMillis();
+        expiryById = new HashMap<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT event_id, expires_at FROM "
+                + TABLE_NOTIFIED + " WHERE expires_at > ?", new String[]{String.valueOf(now)})) {
+            while (cursor.moveToNext()) {
+                expiryById.put(cursor.getString(0), cursor.getLong(1));
+            }
+        }
+
+        // Carry over what the StringSet preference held, then drop it from the prefs file
+        Set<String> legacy = prefs.getStringSet(LEGACY_PREF_NOTIFIED_EVENTS, null);
+        if (legacy != null) {
+            for (String eventId : legacy) {
+                if (!expiryById.containsKey(eventId)) {
+                    expiryById.put(eventId, now + MIGRATED_EXPIRY_MS);
+                    pendingWrites.put(eventId, now + MIGRATED_EXPIRY_MS);
+                }
+            }
+            prefs.edit().remove(LEGACY_PREF_NOTIFIED_EVENTS).apply();
+        }
+        scheduleFlush();
+        return expiryById;
+    }
+
+    // Writes what is pending on the writer thread and returns once it is on disk. Blocks, so call
+    // it off the main thread, e.g. before a broadcast receiver finishes.
+    public void flushNow() {
+        try {
+            writer.submit(this::flush).get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled) return;
+        flushScheduled = true;
+        writer.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Writer thread. One transaction per batch, which also drops the rows that expired.
+    private void flush() {
+        Map<String, Long> writes;
+        boolean clearFirst;
+        synchronized (this) {
+            flushScheduled = false;
+            writes = new HashMap<>(pendingWrites);
+            clearFirst = pendingClear;
+            pendingWrites.clear();
+            pendingClear = false;
+        }
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (clearFirst) {
+                db.delete(TABLE_NOTIFIED, null, null);
+            }
+            SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_NOTIFIED
+                    + " (event_id, expires_at) VALUES (?, ?)");
+            for (Map.Entry<String, Long> entry : writes.entrySet()) {
+                insert.bindString(1, entry.getKey());
+                insert.bindLong(2, entry.getValue());
+                insert.executeInsert();
+            }
+            db.delete(TABLE_NOTIFIED, "expires_at <= ?",
+                    new String[]{String.valueOf(System.currentTimeMillis())});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+import com.stelandvag.unipicityvibes.models.Reservation;
+
+// One booking or cancellation waiting in the reservation log. It carries everything
+// the replay needs, so it can be sent long after the screen that created it is gone.
+public class PendingOp {
+
+    public enum Type { BOOK, CANCEL }
+
+    public final Type type;
+    public final String reservationId;
+    public final String eventId;
+    public final String eventTitle;
+    public final String userId;
+    public final String userName;
+    public final int capacity;
+    public final int seatShards;
+    public final int seatShard;
+    public final long createdAt;
+    public final int attempts;
+
+    public PendingOp(Type type, String reservationId, String eventId, String eventTitle,
+                     String userId, String userName, int capacity, int seatShards,
+                     int seatShard, long createdAt, int attempts) {
+        this.type = type;
+        this.reservationId = reservationId;
+        this.eventId = eventId;
+        this.eventTitle = eventTitle;
+        this.userId = userId;
+        this.userName = userName;
+        this.capacity = capacity;
+        this.seatShards = seatShards;
+        this.seatShard = seatShard;
+        this.createdAt = createdAt;
+        this.attempts = attempts;
+    }
+
+    public static PendingOp book(Event event, Reservation reservation) {
+        return new PendingOp(Type.BOOK, reservation.getReservationId(), event.getEventId(),
+                event.getTitle(), reservation.getUserId(), reservation.getUserName(),
+                event.getCapacity(), event.getSeatShards(), 0, System.currentTimeMillis(), 0);
+    }
+
+    public static PendingOp cancel(Event event, Reservation reservation) {
+        return new PendingOp(Type.CANCEL, reservation.getReservationId(), event.getEventId(),
+                event.getTitle(), reservation.getUserId(), reservation.getUserName(),
+                event.getCapacity(), event.getSeatShards(), reservation.getSeatShard(),
+                System.currentTimeMillis(), 0);
+    }
+
+    // One entry per user and event, a second tap or an opposite op collapses onto it
+    public String key() {
+        return BookingService.idempotencyKey(eventId, userId);
+    }
+
+    boolean isSharded() {
+        return seatShards > 1;
+    }
+
+    // Just what BookingService reads from an event
+    Event toEvent() {
+        Event event = new Event();
+        event.setEventId(eventId);
+        event.setTitle(eventTitle);
+        event.setCapacity(capacity);
+        event.setSeatShards(seatShards);
+        return event;
+    }
+
+    Reservation toReservation() {
+        Reservation reservation = new Reservation(reservationId, eventId, userId, userName, createdAt);
+        reservation.setSeatShard(seatShard);
+        return reservation;
+    }
+}
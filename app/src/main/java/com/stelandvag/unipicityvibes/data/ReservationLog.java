@@ -0,0 +1,166 @@
+package com.stelandvag.unipicityvibes.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import androidx.annotation.Nullable;
+
+import com.stelandvag.unipicityvibes.data.PendingOp.Type;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Write-ahead log of bookings and cancellations that the server has not confirmed yet.
+// An op is on disk before the user sees it as taken, and leaves only once it is resolved.
+// All methods do disk I/O and must be called off the main thread.
+public class ReservationLog extends SQLiteOpenHelper {
+
+    private static final String DB_NAME = "reservation_log.db";
+    private static final int DB_VERSION = 1;
+
+    private static final String TABLE_OPS = "pending_ops";
+    private static final String COLUMNS = "op_key, type, reservation_id, event_id, event_title, "
+            + "user_id, user_name, capacity, seat_shards, seat_shard, created_at, attempts";
+
+    public ReservationLog(Context context) {
+        super(context.getApplicationContext(), DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_OPS + " ("
+                + "op_key TEXT PRIMARY KEY, "
+                + "type TEXT NOT NULL, "
+                + "reservation_id TEXT, "
+                + "event_id TEXT NOT NULL, "
+                + "event_title TEXT, "
+                + "user_id TEXT NOT NULL, "
+                + "user_name TEXT, "
+                + "capacity INTEGER, "
+                + "seat_shards INTEGER, "
+                + "seat_shard INTEGER, "
+                + "created_at INTEGER NOT NULL, "
+                + "attempts INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX idx_ops_created ON " + TABLE_OPS + " (created_at)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Unlike the event cache these rows can't be rebuilt, migrate them when the schema changes
+    }
+
+    // Adds an op, deduplicated against what is already waiting for the same user and event:
+    // a repeated op is dropped, and an op that undoes a waiting one removes both. If the waiting
+    // op is already being sent it can't be taken back, so the new op replaces it in the log and
+    // goes out in the next batch.
+    public void append(PendingOp op, boolean waitingInFlight) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            PendingOp waiting = get(db, op.key());
+            if (waiting == null || (waiting.type != op.type && waitingInFlight)) {
+                db.insertWithOnConflict(TABLE_OPS, null, toValues(op), SQLiteDatabase.CONFLICT_REPLACE);
+            } else if (waiting.type != op.type) {
+                db.delete(TABLE_OPS, "op_key = ?", new String[]{op.key()});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Oldest ops first, so replay keeps the order the user tapped in
+    public List<PendingOp> loadBatch(int limit) {
+        return query("SELECT " + COLUMNS + " FROM " + TABLE_OPS
+                + " ORDER BY created_at LIMIT " + limit);
+    }
+
+    @Nullable
+    public PendingOp get(String eventId, String userId) {
+        return get(getReadableDatabase(), BookingService.idempotencyKey(eventId, userId));
+    }
+
+    // Resolved ops leave the log and failed ones count another attempt, in one transaction.
+    // A cancellation queued behind a booking that did not go through has nothing to cancel
+    // and is dropped with it.
+    public void settle(Collection<PendingOp> resolved, Collection<PendingOp> failed,
+                       Collection<PendingOp> unconfirmedBookings) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (PendingOp op : resolved) {
+                delete(db, op.key(), op.type);
+            }
+            for (PendingOp op : failed) {
+                db.execSQL("UPDATE " + TABLE_OPS + " SET attempts = attempts + 1"
+                        + " WHERE op_key = ? AND type = ?", new Object[]{op.key(), op.type.name()});
+            }
+            for (PendingOp op : unconfirmedBookings) {
+                delete(db, op.key(), Type.CANCEL);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Matching on the type too keeps an op that replaced this one while it was being sent
+    private static void delete(SQLiteDatabase db, String key, Type type) {
+        db.delete(TABLE_OPS, "op_key = ? AND type = ?", new String[]{key, type.name()});
+    }
+
+    @Nullable
+    private PendingOp get(SQLiteDatabase db, String key) {
+        List<PendingOp> result = query(db, "SELECT " + COLUMNS + " FROM " + TABLE_OPS
+                + " WHERE op_key = ?", key);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    private List<PendingOp> query(String sql, String... args) {
+        return query(getReadableDatabase(), sql, args);
+    }
+
+    private static List<PendingOp> query(SQLiteDatabase db, String sql, String... args) {
+        List<PendingOp> ops = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery(sql, args)) {
+            while (cursor.moveToNext()) {
+                ops.add(new PendingOp(
+                        Type.valueOf(cursor.getString(1)),
+                        cursor.getString(2),
+                        cursor.getString(3),
+                        cursor.getString(4),
+                        cursor.getString(5),
+                        cursor.getString(6),
+                        cursor.getInt(7),
+                        cursor.getInt(8),
+                        cursor.getInt(9),
+                        cursor.getLong(10),
+                        cursor.getInt(11)
+                ));
+            }
+        }
+        return ops;
+    }
+
+    private static ContentValues toValues(PendingOp op) {
+        ContentValues values = new ContentValues();
+        values.put("op_key", op.key());
+        values.put("type", op.type.name());
+        values.put("reservation_id", op.reservationId);
+        values.put("event_id", op.eventId);
+        values.put("event_title", op.eventTitle);
+        values.put("user_id", op.userId);
+        values.put("user_name", op.userName);
+        values.put("capacity", op.capacity);
+        values.put("seat_shards", op.seatShards);
+        values.put("seat_shard", op.seatShard);
+        values.put("created_at", op.createdAt);
+        values.put("attempts", op.attempts);
+        return values;
+    }
+}
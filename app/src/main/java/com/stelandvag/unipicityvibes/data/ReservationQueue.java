@@ -0,0 +1,264 @@
+package com.stelandvag.unipicityvibes.data;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import com.stelandvag.unipicityvibes.models.Event;
+import com.stelandvag.unipicityvibes.models.Reservation;
+import com.stelandvag.unipicityvibes.utils.NotificationHelper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Process-wide queue for bookings and cancellations, so a tap never depends on the network.
+// Every op is appended to the ReservationLog first, then a replayer sends the log in batches
+// whenever the device is online. Each booking still takes its own claim, seat and commit round
+// trips (transactions can't share a write), the batch only starts them all at once so they
+// overlap on the one database connection. Each cancellation is one write of its own, so it can be
+// rejected alone once the reservation is gone.
+// A batch that fails is retried with exponential backoff, reset as soon as the network returns.
+//
+// Threading: public methods and callbacks run on the main thread, the log is read and written
+// on its own thread.
+public class ReservationQueue {
+
+    private static final int BATCH_SIZE = 20;
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    // An op that keeps failing (e.g. rejected by the rules) is dropped after this many batches
+    private static final int MAX_ATTEMPTS = 10;
+
+    private static ReservationQueue instance;
+
+    public interface Listener {
+        // Returns true if the screen showed the outcome, otherwise a notification may be posted
+        boolean onOpResolved(PendingOp op, BookingService.Result result);
+    }
+
+    private final Context context;
+    private final ReservationLog log;
+    private final BookingService bookingService;
+    private final ConnectivityManager connectivityManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService logExecutor = Executors.newSingleThreadExecutor();
+
+    // Main thread state
+    private final List<Listener> listeners = new ArrayList<>();
+    private boolean started = false;
+    private boolean replaying = false;
+    private boolean replayRequested = false;
+    private long backoffMs = MIN_BACKOFF_MS;
+    private final Runnable retry = this::replay;
+
+    // Keys of the batch being sent. Log thread only, next to the log writes it guards.
+    private final Set<String> sendingKeys = new HashSet<>();
+
+    private ReservationQueue(Context context) {
+        this.context = context;
+        log = new ReservationLog(context);
+        bookingService = new BookingService(new FirebaseBookingBackend());
+        connectivityManager = context.getSystemService(ConnectivityManager.class);
+    }
+
+    // Call from the main thread
+    public static ReservationQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new ReservationQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Flushes what an earlier run left in the log and replays again whenever the network returns
+    public void start() {
+        if (started) return;
+        started = true;
+
+        connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(@NonNull Network network) {
+                mainHandler.post(() -> {
+                    // Back online, don't wait out a backoff that was meant for the outage
+                    backoffMs = MIN_BACKOFF_MS;
+                    mainHandler.removeCallbacks(retry);
+                    replay();
+                });
+            }
+        });
+        replay();
+    }
+
+    public void addListener(Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean isOnline() {
+        NetworkCapabilities capabilities =
+                connectivityManager.getNetworkCapabilities(connectivityManager.getActiveNetwork());
+        return capabilities != null
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+
+    // onSaved runs once the booking is durable on disk
+    public void book(Event event, Reservation reservation, Runnable onSaved) {
+        enqueue(PendingOp.book(event, reservation), onSaved);
+    }
+
+    public void cancel(Event event, Reservation reservation, Runnable onSaved) {
+        enqueue(PendingOp.cancel(event, reservation), onSaved);
+    }
+
+    // The op still waiting for this user and event, or null
+    public void getPending(String eventId, String userId, BookingBackend.Callback<PendingOp> callback) {
+        logExecutor.execute(() -> {
+            PendingOp op = log.get(eventId, userId);
+            mainHandler.post(() -> callback.onSuccess(op));
+        });
+    }
+
+    private void enqueue(PendingOp op, Runnable onSaved) {
+        logExecutor.execute(() -> {
+            log.append(op, sendingKeys.contains(op.key()));
+            mainHandler.post(() -> {
+                onSaved.run();
+                replay();
+            });
+        });
+    }
+
+    private void replay() {
+        if (replaying) {
+            // Picked up as soon as the running batch is done
+            replayRequested = true;
+            return;
+        }
+        if (!isOnline()) return;
+
+        replaying = true;
+        replayRequested = false;
+        logExecutor.execute(() -> {
+            List<PendingOp> batch = log.loadBatch(BATCH_SIZE);
+            for (PendingOp op : batch) {
+                sendingKeys.add(op.key());
+            }
+            mainHandler.post(() -> sendBatch(batch));
+        });
+    }
+
+    private void sendBatch(List<PendingOp> batch) {
+        if (batch.isEmpty()) {
+            replaying = false;
+            backoffMs = MIN_BACKOFF_MS;
+            return;
+        }
+
+        List<PendingOp> bookings = new ArrayList<>();
+        List<PendingOp> cancellations = new ArrayList<>();
+        for (PendingOp op : batch) {
+            (op.type == PendingOp.Type.BOOK ? bookings : cancellations).add(op);
+        }
+
+        Batch result = new Batch(batch);
+        for (PendingOp op : bookings) {
+            bookingService.book(op.toEvent(), op.toReservation(),
+                    (outcome, message) -> result.done(op, outcome));
+        }
+        for (PendingOp op : cancellations) {
+            bookingService.cancel(op.toReservation(), op.isSharded(),
+                    (outcome, message) -> result.done(op, outcome));
+        }
+    }
+
+    // Collects the outcomes of one batch and settles the log once all ops have answered
+    private class Batch {
+        private final int size;
+        private final boolean full;
+        private final List<PendingOp> resolved = new ArrayList<>();
+        private final List<PendingOp> failed = new ArrayList<>();
+        private final List<PendingOp> unconfirmed = new ArrayList<>();
+
+        Batch(List<PendingOp> ops) {
+            size = ops.size();
+            full = size == BATCH_SIZE;
+        }
+
+        void done(PendingOp op, BookingService.Result outcome) {
+            // An attempt still in progress settles on its own, the retry then sees how it ended
+            boolean failedOp = outcome == BookingService.Result.FAILED
+                    || outcome == BookingService.Result.IN_PROGRESS;
+            if (failedOp && op.attempts + 1 < MAX_ATTEMPTS) {
+                failed.add(op);
+            } else {
+                resolved.add(op);
+                notifyResolved(op, outcome);
+            }
+            if (op.type == PendingOp.Type.BOOK && (failedOp || outcome == BookingService.Result.SOLD_OUT)) {
+                unconfirmed.add(op);
+            }
+
+            if (resolved.size() + failed.size() == size) {
+                settle();
+            }
+        }
+
+        private void settle() {
+            logExecutor.execute(() -> {
+                log.settle(resolved, failed, unconfirmed);
+                for (PendingOp op : resolved) {
+                    sendingKeys.remove(op.key());
+                }
+                for (PendingOp op : failed) {
+                    sendingKeys.remove(op.key());
+                }
+                mainHandler.post(() -> {
+                    replaying = false;
+                    if (!failed.isEmpty()) {
+                        scheduleRetry();
+                    } else {
+                        backoffMs = MIN_BACKOFF_MS;
+                        if (full || replayRequested) {
+                            replay();
+                        }
+                    }
+                });
+            });
+        }
+    }
+
+    private void scheduleRetry() {
+        // Jitter, so devices coming back online together don't retry in lockstep
+        long delay = ThreadLocalRandom.current().nextLong(backoffMs / 2, backoffMs + 1);
+        backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        mainHandler.removeCallbacks(retry);
+        mainHandler.postDelayed(retry, delay);
+    }
+
+    private void notifyResolved(PendingOp op, BookingService.Result result) {
+        boolean shown = false;
+        for (Listener listener : new ArrayList<>(listeners)) {
+            shown |= listener.onOpResolved(op, result);
+        }
+        // Bookings confirmed while the user was elsewhere get a notification,
+        // cancellations only when they could not be sent
+        boolean worthNotifying = op.type == PendingOp.Type.BOOK || result == BookingService.Result.FAILED;
+        if (!shown && worthNotifying) {
+            new NotificationHelper(context).showBookingNotification(op, result);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+// Inverted index over title, category, venue and description for the search box.
+// Text is folded to unaccented Latin, so "θέατρο", "θεατρο" and "theatro" all find the same events.
+// Updated one event at a time by the repository. Not thread safe: worker thread only.
+public class SearchIndex {
+
+    // Field weights for ranking, a title hit counts most
+    private static final int WEIGHT_TITLE = 8;
+    private static final int WEIGHT_CATEGORY = 4;
+    private static final int WEIGHT_VENUE = 2;
+    private static final int WEIGHT_DESCRIPTION = 1;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Greek letters (already lower case and without accents) to Latin
+    private static final Map<Character, String> GREEK_TO_LATIN = new HashMap<>();
+    static {
+        String greek = "αβγδεζηθικλμνξοπρσςτυφχψω";
+        String[] latin = {"a", "v", "g", "d", "e", "z", "i", "th", "i", "k", "l", "m", "n", "x",
+                "o", "p", "r", "s", "s", "t", "y", "f", "ch", "ps", "o"};
+        for (int i = 0; i < greek.length(); i++) {
+            GREEK_TO_LATIN.put(greek.charAt(i), latin[i]);
+        }
+    }
+
+    // token -> (event id -> weight)
+    private final TreeMap<String, Map<String, Integer>> postings = new TreeMap<>();
+    // event id -> its tokens, to undo an event without rescanning
+    private final Map<String, Map<String, Integer>> tokensByEvent = new HashMap<>();
+    private final Map<String, Event> events = new HashMap<>();
+
+    public void add(Event event) {
+        Map<String, Integer> tokens = new HashMap<>();
+        addTokens(tokens, event.getTitle(), WEIGHT_TITLE);
+        addTokens(tokens, event.getCategory(), WEIGHT_CATEGORY);
+        addTokens(tokens, event.getVenue(), WEIGHT_VENUE);
+        addTokens(tokens, event.getDescription(), WEIGHT_DESCRIPTION);
+
+        for (Map.Entry<String, Integer> token : tokens.entrySet()) {
+            Map<String, Integer> ids = postings.get(token.getKey());
+            if (ids == null) {
+                ids = new HashMap<>(4);
+                postings.put(token.getKey(), ids);
+            }
+            ids.put(event.getEventId(), token.getValue());
+        }
+        tokensByEvent.put(event.getEventId(), tokens);
+        events.put(event.getEventId(), event);
+    }
+
+    public void replace(Event oldEvent, Event newEvent) {
+        if (oldEvent != null) {
+            remove(oldEvent);
+        }
+        add(newEvent);
+    }
+
+    public void remove(Event event) {
+        Map<String, Integer> tokens = tokensByEvent.remove(event.getEventId());
+        events.remove(event.getEventId());
+        if (tokens == null) return;
+
+        for (String token : tokens.keySet()) {
+            Map<String, Integer> ids = postings.get(token);
+            if (ids == null) continue;
+            ids.remove(event.getEventId());
+            if (ids.isEmpty()) {
+                postings.remove(token);
+            }
+        }
+    }
+
+    // Events matching every word of the query, best first. Each word also matches as a prefix,
+    // so results update while the user is still typing.
+    public List<Event> search(String query, int limit) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty()) return Collections.emptyList();
+
+        Map<String, Integer> scores = null;
+        for (String word : words) {
+            Map<String, Integer> wordScores = new HashMap<>();
+            NavigableMap<String, Map<String, Integer>> matches =
+                    postings.subMap(word, true, word + Character.MAX_VALUE, false);
+            for (Map.Entry<String, Map<String, Integer>> match : matches.entrySet()) {
+                // Whole-word hits rank above prefix hits
+                int factor = match.getKey().length() == word.length() ? 2 : 1;
+                for (Map.Entry<String, Integer> hit : match.getValue().entrySet()) {
+                    if (scores != null && !scores.containsKey(hit.getKey())) continue;
+                    int score = hit.getValue() * factor;
+                    Integer best = wordScores.get(hit.getKey());
+                    if (best == null || score > best) {
+                        wordScores.put(hit.getKey(), score);
+                    }
+                }
+            }
+
+            // Every word must match
+            if (scores != null) {
+                for (Map.Entry<String, Integer> entry : wordScores.entrySet()) {
+                    entry.setValue(entry.getValue() + scores.get(entry.getKey()));
+                }
+            }
+            scores = wordScores;
+            if (scores.isEmpty()) return Collections.emptyList();
+        }
+
+        List<Map.Entry<String, Integer>> ranked = new ArrayList<>(scores.entrySet());
+        Collections.sort(ranked, (a, b) -> {
+            int result = Integer.compare(b.getValue(), a.getValue());
+            return result != 0 ? result
+                    : SortedEventList.BY_DATE.compare(events.get(a.getKey()), events.get(b.getKey()));
+        });
+
+        List<Event> result = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            result.add(events.get(ranked.get(i).getKey()));
+        }
+        return result;
+    }
+
+    // Lower case, strip accents, fold Greek to Latin and split into words
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) return tokens;
+
+        String folded = MARKS.matcher(Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD))
+                .replaceAll("");
+        StringBuilder latin = new StringBuilder(folded.length() + 8);
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            String mapped = GREEK_TO_LATIN.get(c);
+            if (mapped != null) {
+                latin.append(mapped);
+            } else {
+                latin.append(c);
+            }
+        }
+
+        for (String token : SEPARATORS.split(latin)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static void addTokens(Map<String, Integer> tokens, String text, int weight) {
+        for (String token : tokenize(text)) {
+            Integer current = tokens.get(token);
+            if (current == null || weight > current) {
+                tokens.put(token, weight);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// Event list kept sorted while events are added, replaced and removed one at a time.
+// Events must not be mutated while they are in the list, replace them instead.
+public class SortedEventList {
+
+    // Sort by date, ties broken by id so every event has exactly one position
+    public static final Comparator<Event> BY_DATE = (e1, e2) -> {
+        int result = Long.compare(e1.getDateTime(), e2.getDateTime());
+        return result != 0 ? result : e1.getEventId().compareTo(e2.getEventId());
+    };
+
+    private final Comparator<Event> comparator;
+    private final List<Event> events = new ArrayList<>();
+    private final List<Event> readOnly = Collections.unmodifiableList(events);
+
+    public SortedEventList(Comparator<Event> comparator) {
+        this.comparator = comparator;
+    }
+
+    // O(log n) search plus one array shift
+    public void add(Event event) {
+        int index = Collections.binarySearch(events, event, comparator);
+        if (index < 0) {
+            events.add(-index - 1, event);
+        }
+    }
+
+    // The old instance is needed to find its position, since its sort keys may differ from the new one
+    public void replace(Event oldEvent, Event newEvent) {
+        if (oldEvent != null) {
+            remove(oldEvent);
+        }
+        add(newEvent);
+    }
+
+    public void remove(Event event) {
+        int index = Collections.binarySearch(events, event, comparator);
+        if (index >= 0) {
+            events.remove(index);
+        }
+    }
+
+    // Position of the first event that sorts at or after the probe
+    public int lowerBound(Event probe) {
+        int index = Collections.binarySearch(events, probe, comparator);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    public Event get(int index) {
+        return events.get(index);
+    }
+
+    public void clear() {
+        events.clear();
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    // Live read-only view, valid until the next change
+    public List<Event> asList() {
+        return readOnly;
+    }
+}
@@ -0,0 +1,164 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Grid of event coordinates for radius and nearest-neighbour searches.
+// Cells are CELL_DEGREES wide (about 1 km around Piraeus), so a query only looks at the
+// few cells that can hold a match and computes each candidate's distance exactly once.
+// Not thread safe: the repository only touches it on the event worker thread.
+public class SpatialIndex {
+
+    private static final double CELL_DEGREES = 0.01;
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+    private static final double METERS_PER_DEGREE_LAT = 111320.0;
+    // kNN gives up after this many rings of cells (about 50 km)
+    private static final int MAX_RINGS = 50;
+
+    private final Map<Long, List<Event>> cells = new HashMap<>();
+
+    public void add(Event event) {
+        long key = cellKey(cellOf(event.getLatitude()), cellOf(event.getLongitude()));
+        List<Event> cell = cells.get(key);
+        if (cell == null) {
+            cell = new ArrayList<>(4);
+            cells.put(key, cell);
+        }
+        cell.add(event);
+    }
+
+    // The old instance is needed to find its cell, since the location may have changed
+    public void replace(Event oldEvent, Event newEvent) {
+        if (oldEvent != null) {
+            remove(oldEvent);
+        }
+        add(newEvent);
+    }
+
+    public void remove(Event event) {
+        long key = cellKey(cellOf(event.getLatitude()), cellOf(event.getLongitude()));
+        List<Event> cell = cells.get(key);
+        if (cell == null) return;
+        cell.remove(event);
+        if (cell.isEmpty()) {
+            cells.remove(key);
+        }
+    }
+
+    // Events within the radius, closest first
+    public List<NearbyEvent> withinRadius(double lat, double lng, double radiusMeters) {
+        double latSpan = radiusMeters / METERS_PER_DEGREE_LAT;
+        double lngSpan = radiusMeters / (METERS_PER_DEGREE_LAT * Math.max(Math.cos(Math.toRadians(lat)), 0.01));
+
+        int minLat = cellOf(lat - latSpan), maxLat = cellOf(lat + latSpan);
+        int minLng = cellOf(lng - lngSpan), maxLng = cellOf(lng + lngSpan);
+
+        List<NearbyEvent> result = new ArrayList<>();
+        for (int y = minLat; y <= maxLat; y++) {
+            for (int x = minLng; x <= maxLng; x++) {
+                List<Event> cell = cells.get(cellKey(y, x));
+                if (cell == null) continue;
+                for (Event event : cell) {
+                    float distance = distanceMeters(lat, lng, event.getLatitude(), event.getLongitude());
+                    if (distance <= radiusMeters) {
+                        result.add(new NearbyEvent(event, distance));
+                    }
+                }
+            }
+        }
+        Collections.sort(result, (n1, n2) -> Float.compare(n1.distanceMeters, n2.distanceMeters));
+        return result;
+    }
+
+    // The k closest events, closest first. Searches outwards ring by ring and stops
+    // once no unvisited cell can hold anything closer than the current k-th hit.
+    public List<NearbyEvent> nearest(double lat, double lng, int k) {
+        int centerLat = cellOf(lat), centerLng = cellOf(lng);
+        // Smallest width of a cell, to know how far a ring is guaranteed to be
+        double cellMeters = CELL_DEGREES * METERS_PER_DEGREE_LAT
+                * Math.min(1.0, Math.max(Math.cos(Math.toRadians(lat)), 0.01));
+
+        List<NearbyEvent> found = new ArrayList<>();
+        for (int ring = 0; ring <= MAX_RINGS && !cells.isEmpty(); ring++) {
+            for (int y = centerLat - ring; y <= centerLat + ring; y++) {
+                for (int x = centerLng - ring; x <= centerLng + ring; x++) {
+                    // Only the border of the square is new in this ring
+                    if (Math.abs(y - centerLat) != ring && Math.abs(x - centerLng) != ring) continue;
+                    List<Event> cell = cells.get(cellKey(y, x));
+                    if (cell == null) continue;
+                    for (Event event : cell) {
+                        found.add(new NearbyEvent(event,
+                                distanceMeters(lat, lng, event.getLatitude(), event.getLongitude())));
+                    }
+                }
+            }
+
+            if (found.size() >= k) {
+                Collections.sort(found, (n1, n2) -> Float.compare(n1.distanceMeters, n2.distanceMeters));
+                // Anything in the next ring is at least this far away
+                if (found.get(k - 1).distanceMeters <= ring * cellMeters) {
+                    break;
+                }
+            }
+        }
+
+        Collections.sort(found, (n1, n2) -> Float.compare(n1.distanceMeters, n2.distanceMeters));
+        return found.size() > k ? new ArrayList<>(found.subList(0, k)) : found;
+    }
+
+    // Adds the events inside a lat/lng box to out. The box must not cross the 180th meridian.
+    public void collectInBounds(double south, double west, double north, double east, List<Event> out) {
+        int minLat = cellOf(south), maxLat = cellOf(north);
+        int minLng = cellOf(west), maxLng = cellOf(east);
+
+        long boxCells = (long) (maxLat - minLat + 1) * (maxLng - minLng + 1);
+        if (boxCells > cells.size()) {
+            // Zoomed far out: walking the occupied cells beats walking the empty ones in the box
+            for (List<Event> cell : cells.values()) {
+                collect(cell, south, west, north, east, out);
+            }
+            return;
+        }
+        for (int y = minLat; y <= maxLat; y++) {
+            for (int x = minLng; x <= maxLng; x++) {
+                List<Event> cell = cells.get(cellKey(y, x));
+                if (cell != null) {
+                    collect(cell, south, west, north, east, out);
+                }
+            }
+        }
+    }
+
+    private static void collect(List<Event> cell, double south, double west, double north, double east,
+                                List<Event> out) {
+        for (Event event : cell) {
+            double lat = event.getLatitude(), lng = event.getLongitude();
+            if (lat >= south && lat <= north && lng >= west && lng <= east) {
+                out.add(event);
+            }
+        }
+    }
+
+    // Great-circle distance, close enough to Location.distanceBetween at city scale
+    public static float distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return (float) (2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a))));
+    }
+
+    private static int cellOf(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    private static long cellKey(int latCell, int lngCell) {
+        return ((long) latCell << 32) | (lngCell & 0xffffffffL);
+    }
+}
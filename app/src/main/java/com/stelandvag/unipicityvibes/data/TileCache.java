@@ -0,0 +1,166 @@
+package com.stelandvag.unipicityvibes.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+import com.stelandvag.unipicityvibes.utils.GeoHash;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Events of a map viewport, fetched per geohash tile with one range query each instead of the
+// whole tree. The query is on the tileTime key, so past events are left out by the server.
+// Loaded tiles are kept in an LRU. The tiles in view are fetched again once stale, on the next
+// request or by a timer while the map stays put, and their old contents stay on screen meanwhile.
+// Loads of tiles that left the viewport are dropped before they answer.
+// Needs ".indexOn": ["tileTime"] on the events node.
+//
+// Main thread only, Firebase calls back there.
+class TileCache {
+
+    // Zoomed out further than this many tiles, nothing new is fetched
+    private static final int MAX_VIEW_TILES = 24;
+    private static final int MAX_TILES = 64;
+    private static final long STALE_AFTER_MS = 5 * 60 * 1000L;
+
+    interface Callback {
+        // The whole content of a tile, replacing what it held before
+        void onTileLoaded(String cell, DataSnapshot snapshot);
+        void onTileEvicted(String cell);
+    }
+
+    private static final class Tile {
+        final String cell;
+        boolean loaded = false;
+        long loadedAt;
+        Query query;
+        ValueEventListener listener;
+
+        Tile(String cell) {
+            this.cell = cell;
+        }
+    }
+
+    private final DatabaseReference eventsRef;
+    private final Callback callback;
+    // Events that started longer ago than this are not fetched
+    private final long retentionMs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // Last requested box, refreshed while nothing new is requested
+    private double[] lastBox;
+    private final Runnable refresh = () -> {
+        if (lastBox != null) {
+            request(lastBox[0], lastBox[1], lastBox[2], lastBox[3]);
+        }
+    };
+
+    // Access ordered, so the eldest entry is the tile looked at longest ago
+    private final LinkedHashMap<String, Tile> tiles = new LinkedHashMap<String, Tile>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Tile> eldest) {
+            if (size() <= MAX_TILES) return false;
+            Tile tile = eldest.getValue();
+            cancel(tile);
+            if (tile.loaded) {
+                callback.onTileEvicted(tile.cell);
+            }
+            return true;
+        }
+    };
+
+    TileCache(DatabaseReference eventsRef, long retentionMs, Callback callback) {
+        this.eventsRef = eventsRef;
+        this.retentionMs = retentionMs;
+        this.callback = callback;
+    }
+
+    // Make sure the tiles of this box are loaded and fresh, and keep them fresh until the next
+    // request or cancelAll. West may be greater than east.
+    void request(double south, double west, double north, double east) {
+        handler.removeCallbacks(refresh);
+        lastBox = null;
+        Set<String> cells = GeoHash.cellsInBounds(south, west, north, east,
+                GeoHash.TILE_PRECISION, MAX_VIEW_TILES);
+        cancelOutside(cells);
+        if (cells == null) return;
+        lastBox = new double[]{south, west, north, east};
+        handler.postDelayed(refresh, STALE_AFTER_MS);
+
+        // Touch the known tiles first, so adding new ones can only evict tiles out of view
+        for (String cell : cells) {
+            tiles.get(cell);
+        }
+        long now = SystemClock.elapsedRealtime();
+        for (String cell : cells) {
+            Tile tile = tiles.get(cell);
+            if (tile == null) {
+                tile = new Tile(cell);
+                tiles.put(cell, tile);
+            }
+            if (tile.query == null && (!tile.loaded || now - tile.loadedAt > STALE_AFTER_MS)) {
+                load(tile);
+            }
+        }
+    }
+
+    // Drop every pending load and the refresh, e.g. when the map closes. Loaded tiles stay cached.
+    void cancelAll() {
+        handler.removeCallbacks(refresh);
+        lastBox = null;
+        cancelOutside(null);
+    }
+
+    private void cancelOutside(Set<String> cells) {
+        Iterator<Tile> it = tiles.values().iterator();
+        while (it.hasNext()) {
+            Tile tile = it.next();
+            if (tile.query == null || (cells != null && cells.contains(tile.cell))) continue;
+            cancel(tile);
+            if (!tile.loaded) {
+                it.remove();
+            }
+        }
+    }
+
+    private void load(Tile tile) {
+        String[] range = GeoHash.tileRange(tile.cell, System.currentTimeMillis() - retentionMs);
+        tile.query = eventsRef.orderByChild("tileTime").startAt(range[0]).endAt(range[1]);
+        tile.listener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                if (tile.listener != this) return;
+                tile.query = null;
+                tile.listener = null;
+                tile.loaded = true;
+                tile.loadedAt = SystemClock.elapsedRealtime();
+                callback.onTileLoaded(tile.cell, snapshot);
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                // Tried again on the next request
+                if (tile.listener != this) return;
+                tile.query = null;
+                tile.listener = null;
+            }
+        };
+        tile.query.addListenerForSingleValueEvent(tile.listener);
+    }
+
+    private static void cancel(Tile tile) {
+        if (tile.query == null) return;
+        tile.query.removeEventListener(tile.listener);
+        tile.query = null;
+        tile.listener = null;
+    }
+}
@@ -1,6 +1,16 @@
 package com.stelandvag.unipicityvibes.models;
 
-public class Event {
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.google.firebase.database.IgnoreExtraProperties;
+import com.stelandvag.unipicityvibes.utils.GeoHash;
+
+// Parcelable so a screen can hand the event it shows to the detail screen in the intent.
+// Events booked before the seat counters moved to eventSeats may still hold old seat marks,
+// which the app never reads.
+@IgnoreExtraProperties
+public class Event implements Parcelable {
     private String eventId;
     private String title;
     private String description;
@@ -11,8 +21,15 @@ public class Event {
     private double latitude;
     private double longitude;
     private int capacity;
+    // Committed reservations, counted up and down by the reservation writes
     private int bookedSeats;
     private String imageUrl;
+    // Location cell for orderByChild("geohash") range queries
+    private String geohash;
+    // Map tile and start time, for orderByChild("tileTime") queries that skip past events
+    private String tileTime;
+    // Number of seat counter shards for high demand events, 0 for a single counter
+    private int seatShards;
     //Empty Constructor
     public Event() {}
     // Constructor
@@ -31,6 +48,63 @@ public class Event {
         this.capacity = capacity;
         this.bookedSeats = bookedSeats;
         this.imageUrl = imageUrl;
+        this.geohash = GeoHash.encode(latitude, longitude);
+        this.tileTime = GeoHash.tileTimeKey(GeoHash.encode(latitude, longitude, GeoHash.TILE_PRECISION),
+                dateTime);
+    }
+
+    protected Event(Parcel in) {
+        eventId = in.readString();
+        title = in.readString();
+        description = in.readString();
+        category = in.readString();
+        dateTime = in.readLong();
+        price = in.readDouble();
+        venue = in.readString();
+        latitude = in.readDouble();
+        longitude = in.readDouble();
+        capacity = in.readInt();
+        bookedSeats = in.readInt();
+        imageUrl = in.readString();
+        geohash = in.readString();
+        tileTime = in.readString();
+        seatShards = in.readInt();
+    }
+
+    public static final Creator<Event> CREATOR = new Creator<Event>() {
+        @Override
+        public Event createFromParcel(Parcel in) {
+            return new Event(in);
+        }
+
+        @Override
+        public Event[] newArray(int size) {
+            return new Event[size];
+        }
+    };
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(eventId);
+        dest.writeString(title);
+        dest.writeString(description);
+        dest.writeString(category);
+        dest.writeLong(dateTime);
+        dest.writeDouble(price);
+        dest.writeString(venue);
+        dest.writeDouble(latitude);
+        dest.writeDouble(longitude);
+        dest.writeInt(capacity);
+        dest.writeInt(bookedSeats);
+        dest.writeString(imageUrl);
+        dest.writeString(geohash);
+        dest.writeString(tileTime);
+        dest.writeInt(seatShards);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
     }
 
     // Setters Getters
@@ -58,9 +132,15 @@ public class Event {
     public void setBookedSeats(int bookedSeats) { this.bookedSeats = bookedSeats; }
     public String getImageUrl() { return imageUrl; }
     public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
+    public String getGeohash() { return geohash; }
+    public void setGeohash(String geohash) { this.geohash = geohash; }
+    public String getTileTime() { return tileTime; }
+    public void setTileTime(String tileTime) { this.tileTime = tileTime; }
+    public int getSeatShards() { return seatShards; }
+    public void setSeatShards(int seatShards) { this.seatShards = seatShards; }
 
 
-    // Check availability
+    // Check availability. bookedSeats counts the committed reservations of sharded events too.
     public int getAvailableSeats() {
         return capacity - bookedSeats;
     }
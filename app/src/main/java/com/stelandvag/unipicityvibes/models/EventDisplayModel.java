@@ -0,0 +1,117 @@
+package com.stelandvag.unipicityvibes.models;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+
+import com.stelandvag.unipicityvibes.R;
+
+import java.text.NumberFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.Objects;
+
+// Texts an event is shown with, formatted once per event change instead of on every bind.
+// Immutable, so it can be built on the worker thread and handed to the adapters as is.
+public final class EventDisplayModel {
+
+    public final Event event;
+    public final String badgeText;
+    public final String dateText;
+    public final String timeText;
+    public final String priceText;
+    public final String seatsText;
+    public final String venueText;
+    private final Formatters formatters;
+
+    private EventDisplayModel(Event event, Formatters formatters) {
+        this.event = event;
+        this.formatters = formatters;
+        badgeText = event.getCategory() == null ? "" : event.getCategory().toUpperCase(formatters.locale);
+        ZonedDateTime dateTime = Instant.ofEpochMilli(event.getDateTime()).atZone(formatters.zone);
+        dateText = formatters.date.format(dateTime);
+        timeText = formatters.time.format(dateTime);
+        priceText = formatters.price(event.getPrice());
+        seatsText = formatters.seatsLeft(event.getAvailableSeats());
+        venueText = "📍 " + event.getVenue();
+    }
+
+    public static EventDisplayModel of(Context context, Event event) {
+        return new EventDisplayModel(event, Formatters.current(context));
+    }
+
+    // False once the event changed or the language or time zone did
+    public boolean isCurrentFor(Event event) {
+        return this.event == event && formatters.isCurrent();
+    }
+
+    public boolean sameContentAs(EventDisplayModel other) {
+        return event == other.event
+                || (Objects.equals(event.getTitle(), other.event.getTitle())
+                && Objects.equals(event.getImageUrl(), other.event.getImageUrl())
+                && badgeText.equals(other.badgeText)
+                && dateText.equals(other.dateText)
+                && timeText.equals(other.timeText)
+                && priceText.equals(other.priceText)
+                && seatsText.equals(other.seatsText)
+                && venueText.equals(other.venueText));
+    }
+
+    // java.time formatters are immutable and thread safe, one set per locale and zone
+    private static final class Formatters {
+        private static volatile Formatters current;
+
+        final Locale locale;
+        final ZoneId zone;
+        final DateTimeFormatter date;
+        final DateTimeFormatter time;
+        // Resources of the app language, for the plurals
+        private final Resources resources;
+        // Not thread safe, used under its own lock
+        private final NumberFormat currency;
+
+        private Formatters(Context context, Locale locale, ZoneId zone) {
+            this.locale = locale;
+            this.zone = zone;
+            date = DateTimeFormatter.ofPattern("MMM dd, yyyy", locale);
+            time = DateTimeFormatter.ofPattern("HH:mm", locale);
+            Configuration config = new Configuration(context.getResources().getConfiguration());
+            config.setLocale(locale);
+            resources = context.createConfigurationContext(config).getResources();
+            currency = NumberFormat.getCurrencyInstance(locale);
+            // Prices are stored in euros whatever the language
+            currency.setCurrency(Currency.getInstance("EUR"));
+        }
+
+        static Formatters current(Context context) {
+            Formatters formatters = current;
+            if (formatters == null || !formatters.isCurrent()) {
+                formatters = new Formatters(context, Locale.getDefault(), ZoneId.systemDefault());
+                current = formatters;
+            }
+            return formatters;
+        }
+
+        boolean isCurrent() {
+            return locale.equals(Locale.getDefault()) && zone.equals(ZoneId.systemDefault());
+        }
+
+        // Whole prices without cents, like "€12" or "12 €", others with them
+        String price(double price) {
+            synchronized (currency) {
+                int fraction = price == Math.rint(price) ? 0 : 2;
+                currency.setMinimumFractionDigits(fraction);
+                currency.setMaximumFractionDigits(fraction);
+                return currency.format(price);
+            }
+        }
+
+        String seatsLeft(int seats) {
+            return resources.getQuantityString(R.plurals.seats_left, seats, seats);
+        }
+    }
+}
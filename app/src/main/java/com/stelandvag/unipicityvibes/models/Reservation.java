@@ -6,6 +6,8 @@ public class Reservation {
     private String userId;
     private String userName;
     private long timestamp;
+    // Seat counter shard the seat was taken from, for sharded events
+    private int seatShard;
 
     // Empty  constructor
     public Reservation() {}
@@ -30,4 +32,6 @@ public class Reservation {
     public void setUserName(String userName) { this.userName = userName; }
     public long getTimestamp() { return timestamp; }
     public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+    public int getSeatShard() { return seatShard; }
+    public void setSeatShard(int seatShard) { this.seatShard = seatShard; }
 }
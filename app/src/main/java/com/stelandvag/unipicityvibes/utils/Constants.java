@@ -5,6 +5,12 @@ public class Constants {
     public static final String EVENTS_REF = "events";
     public static final String RESERVATIONS_REF = "reservations";
     public static final String USERS_REF = "users";
+    // userReservations/{uid}/{eventId} -> reservation id, written together with the reservation
+    public static final String USER_RESERVATIONS_REF = "userReservations";
+    // eventSeats/{eventId} -> {capacity, booked, holders}, the seat counter of an unsharded event
+    public static final String EVENT_SEATS_REF = "eventSeats";
+    // seatShards/{eventId}/{shard} -> {capacity, booked, holders}, set up by the first booking
+    public static final String SEAT_SHARDS_REF = "seatShards";
     // Firebase Database URL
     public static final String FIREBASE_DB_URL = "https://myunipicityvibes-default-rtdb.europe-west1.firebasedatabase.app";
 
@@ -15,13 +21,21 @@ public class Constants {
     public static final String PREF_DARK_THEME = "dark_theme";
     public static final String PREF_FONT_SIZE = "font_size";
     public static final String PREF_NOTIFICATIONS_ENABLED = "notifications_enabled";
+    public static final String PREF_BACKGROUND_LOCATION_ASKED = "background_location_asked";
     public static final String PREF_LANGUAGE = "language";
+    // Per user id: reservations from before the userReservations index got their entries
+    public static final String PREF_RESERVATIONS_INDEXED = "reservations_indexed_";
 
     // Location
     public static final int PROXIMITY_RADIUS_METERS = 2000;
     public static final int LOCATION_UPDATE_INTERVAL = 10000;
     public static final int LOCATION_FASTEST_INTERVAL = 5000;
 
+    // Where the map opens when no events are loaded yet (Piraeus)
+    public static final double DEFAULT_MAP_LAT = 37.9420;
+    public static final double DEFAULT_MAP_LNG = 23.6465;
+    public static final float DEFAULT_MAP_ZOOM = 13f;
+
     // Event Categories
     public static final String CATEGORY_THEATER = "theater";
     public static final String CATEGORY_CINEMA = "cinema";
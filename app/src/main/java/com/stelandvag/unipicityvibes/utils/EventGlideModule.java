@@ -0,0 +1,34 @@
+package com.stelandvag.unipicityvibes.utils;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.AppGlideModule;
+
+// Glide setup for event images
+@GlideModule
+public final class EventGlideModule extends AppGlideModule {
+
+    private static final String DISK_CACHE_NAME = "event_images";
+    // Room for the originals of the events in the upcoming window plus their thumbnails
+    private static final long DISK_CACHE_BYTES = 150L * 1024 * 1024;
+    // The home screen shows three rows of cards, keep their thumbnails when scrolling back
+    private static final float MEMORY_CACHE_SCREENS = 3;
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, DISK_CACHE_NAME, DISK_CACHE_BYTES));
+        builder.setMemorySizeCalculator(new MemorySizeCalculator.Builder(context)
+                .setMemoryCacheScreens(MEMORY_CACHE_SCREENS));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
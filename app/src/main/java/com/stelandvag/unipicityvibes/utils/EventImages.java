@@ -0,0 +1,47 @@
+package com.stelandvag.unipicityvibes.utils;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.stelandvag.unipicityvibes.R;
+import com.stelandvag.unipicityvibes.models.Event;
+
+// Image requests for event pictures. Cards ask for a thumbnail decoded at the card's pixel size,
+// so a large upload costs a small bitmap. The detail screen shows that same bitmap from the
+// memory cache while its full size image loads.
+public final class EventImages {
+
+    private EventImages() {}
+
+    public static boolean hasImage(Event event) {
+        return event.getImageUrl() != null && !event.getImageUrl().isEmpty();
+    }
+
+    // Pixel size of the card image, {width, height}
+    public static int[] thumbnailSize(Context context) {
+        Resources resources = context.getResources();
+        return new int[]{
+                resources.getDimensionPixelSize(R.dimen.event_card_width),
+                resources.getDimensionPixelSize(R.dimen.event_card_image_height)
+        };
+    }
+
+    // Every caller must build the thumbnail here, with the same size and options,
+    // or the request gets another cache key and decodes the image again
+    public static RequestBuilder<Drawable> thumbnail(RequestManager glide, String imageUrl,
+                                                     int width, int height) {
+        return glide.load(imageUrl)
+                .override(width, height)
+                .centerCrop()
+                // Photos have no alpha, half the bytes per pixel
+                .format(DecodeFormat.PREFER_RGB_565)
+                // Keeps the download for the detail screen and the small decoded thumbnail
+                // for the next cold start
+                .diskCacheStrategy(DiskCacheStrategy.ALL);
+    }
+}
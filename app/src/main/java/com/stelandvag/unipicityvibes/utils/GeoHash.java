@@ -0,0 +1,160 @@
+package com.stelandvag.unipicityvibes.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Geohash encoding and the prefix ranges that cover a circle.
+// Events store their geohash, so orderByChild("geohash") with startAt/endAt returns one cell.
+public class GeoHash {
+
+    // About 5 m x 5 m, more than enough for venues
+    public static final int DEFAULT_PRECISION = 9;
+    // Map tiles of about 4.9 x 4.9 km, a few of them cover the city at street zoom
+    public static final int TILE_PRECISION = 5;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    private static final double METERS_PER_DEGREE_LAT = 111320.0;
+    // Every geohash with a given prefix sorts between the prefix and the prefix followed by this
+    private static final char RANGE_END = '~';
+
+    private GeoHash() {}
+
+    public static String encode(double lat, double lng, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0, value = 0;
+
+        while (hash.length() < precision) {
+            // Bits alternate between longitude and latitude, starting with longitude
+            if (evenBit) {
+                double mid = (minLng + maxLng) / 2;
+                if (lng >= mid) {
+                    value = (value << 1) | 1;
+                    minLng = mid;
+                } else {
+                    value = value << 1;
+                    maxLng = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    value = (value << 1) | 1;
+                    minLat = mid;
+                } else {
+                    value = value << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(value));
+                bit = 0;
+                value = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    public static String encode(double lat, double lng) {
+        return encode(lat, lng, DEFAULT_PRECISION);
+    }
+
+    // Longest precision whose cells are still at least radius wide and tall at this latitude,
+    // so the cell of the centre plus its eight neighbours always cover the circle
+    public static int precisionFor(double lat, double radiusMeters) {
+        double metersPerDegreeLng = METERS_PER_DEGREE_LAT * Math.max(Math.cos(Math.toRadians(lat)), 0.01);
+        for (int precision = DEFAULT_PRECISION; precision > 1; precision--) {
+            int bits = precision * 5;
+            double cellLng = 360.0 / Math.pow(2, (bits + 1) / 2) * metersPerDegreeLng;
+            double cellLat = 180.0 / Math.pow(2, bits / 2) * METERS_PER_DEGREE_LAT;
+            if (cellLng >= radiusMeters && cellLat >= radiusMeters) {
+                return precision;
+            }
+        }
+        return 1;
+    }
+
+    // The geohash cells (at most nine) around the circle
+    public static Set<String> coveringCells(double lat, double lng, double radiusMeters) {
+        int precision = precisionFor(lat, radiusMeters);
+        double latSpan = radiusMeters / METERS_PER_DEGREE_LAT;
+        double lngSpan = radiusMeters / (METERS_PER_DEGREE_LAT * Math.max(Math.cos(Math.toRadians(lat)), 0.01));
+
+        Set<String> cells = new LinkedHashSet<>();
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                double pointLat = Math.max(-90, Math.min(90, lat + dy * latSpan));
+                double pointLng = wrapLongitude(lng + dx * lngSpan);
+                cells.add(encode(pointLat, pointLng, precision));
+            }
+        }
+        return cells;
+    }
+
+    // [start, end] pairs for orderByChild("geohash").startAt(start).endAt(end)
+    public static List<String[]> queryRanges(double lat, double lng, double radiusMeters) {
+        List<String[]> ranges = new ArrayList<>();
+        for (String cell : coveringCells(lat, lng, radiusMeters)) {
+            ranges.add(range(cell));
+        }
+        return ranges;
+    }
+
+    public static String[] range(String cell) {
+        return new String[]{cell, cell + RANGE_END};
+    }
+
+    // Map tile and start time in one sortable key, "{tile}_{dateTime}" with the time zero padded.
+    // orderByChild("tileTime") then selects one tile from a given time on, server side.
+    public static String tileTimeKey(String tile, long dateTime) {
+        return tile + "_" + String.format(Locale.ROOT, "%013d", Math.max(0, dateTime));
+    }
+
+    // [start, end] for the events of a tile starting at fromTime or later
+    public static String[] tileRange(String tile, long fromTime) {
+        return new String[]{tileTimeKey(tile, fromTime), tile + "_" + RANGE_END};
+    }
+
+    // The cells of the given precision that cover a lat/lng box, or null when there are more
+    // than maxCells of them. West may be greater than east for a box crossing the 180th meridian.
+    public static Set<String> cellsInBounds(double south, double west, double north, double east,
+                                            int precision, int maxCells) {
+        int bits = precision * 5;
+        double cellLng = 360.0 / Math.pow(2, (bits + 1) / 2);
+        double cellLat = 180.0 / Math.pow(2, bits / 2);
+        if (east < west) {
+            east += 360;
+        }
+
+        long firstRow = (long) Math.floor((south + 90) / cellLat);
+        long lastRow = (long) Math.floor((Math.min(north, 90 - 1e-9) + 90) / cellLat);
+        long firstCol = (long) Math.floor((west + 180) / cellLng);
+        long lastCol = (long) Math.floor((east + 180) / cellLng);
+        if ((lastRow - firstRow + 1) * (lastCol - firstCol + 1) > maxCells) {
+            return null;
+        }
+
+        // Encoding the centre of each cell gives exactly that cell
+        Set<String> cells = new LinkedHashSet<>();
+        for (long row = firstRow; row <= lastRow; row++) {
+            double lat = (row + 0.5) * cellLat - 90;
+            for (long col = firstCol; col <= lastCol; col++) {
+                double lng = wrapLongitude((col + 0.5) * cellLng - 180);
+                cells.add(encode(lat, lng, precision));
+            }
+        }
+        return cells;
+    }
+
+    private static double wrapLongitude(double lng) {
+        if (lng > 180) return lng - 360;
+        if (lng < -180) return lng + 360;
+        return lng;
+    }
+}
@@ -0,0 +1,231 @@
+package com.stelandvag.unipicityvibes.utils;
+
+import android.Manifest;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Build;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingClient;
+import com.google.android.gms.location.GeofencingRequest;
+import com.google.android.gms.location.LocationServices;
+import com.stelandvag.unipicityvibes.data.EventRepository;
+import com.stelandvag.unipicityvibes.data.NearbyEvent;
+import com.stelandvag.unipicityvibes.data.SpatialIndex;
+import com.stelandvag.unipicityvibes.models.Event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Registers OS geofences around the upcoming events nearest to the user, so the proximity
+// notification arrives while the app is closed, without the app polling the location.
+// One more geofence around the user marks how far the plan holds: leaving it re-plans from
+// GeofenceReceiver, using the stored events, so it also works when nothing is in memory.
+// A plan that found no events (e.g. the first launch, before anything was stored) is not kept,
+// it is made again from memory once the events synced.
+//
+// Call from the main thread.
+public class GeofenceManager {
+
+    // The OS allows 100 per app, the nearest few are the only ones likely to be reached
+    private static final int MAX_GEOFENCES = 20;
+    // Area searched for the nearest events around the user
+    private static final double SEARCH_RADIUS_METERS = 10000;
+    // Moves shorter than this keep the current plan
+    private static final float REPLAN_DISTANCE_METERS = 500;
+    // Events appear and sell out, plan again after this long even without moving
+    private static final long PLAN_MAX_AGE_MS = 6 * 60 * 60 * 1000L;
+    // An event is still worth a notification this long after it started
+    private static final long EVENT_LINGER_MS = 3 * 60 * 60 * 1000L;
+    static final String REPLAN_ID = "replan";
+
+    private static final String PREF_PLAN_LAT = "geofence_plan_lat";
+    private static final String PREF_PLAN_LNG = "geofence_plan_lng";
+    private static final String PREF_PLAN_TIME = "geofence_plan_time";
+    // Geofences do not survive a reboot, a plan made before the last boot is gone
+    private static final String PREF_PLAN_BOOT = "geofence_plan_boot";
+    private static final long BOOT_TOLERANCE_MS = 60 * 1000L;
+
+    private static GeofenceManager instance;
+
+    private final Context context;
+    private final GeofencingClient client;
+    private final SharedPreferences prefs;
+    private final EventRepository eventRepository;
+    // An empty plan is waiting for the first sync
+    private boolean replanAfterSync = false;
+
+    private GeofenceManager(Context context) {
+        this.context = context;
+        this.client = LocationServices.getGeofencingClient(context);
+        this.prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+        this.eventRepository = EventRepository.getInstance(context);
+    }
+
+    public static GeofenceManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new GeofenceManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // A fresh location from the app. Only a significant move or an old plan re-registers.
+    public void onLocation(Location location) {
+        if (!prefs.getBoolean(Constants.PREF_NOTIFICATIONS_ENABLED, true)) {
+            clear();
+            return;
+        }
+        if (isPlanCurrent(location.getLatitude(), location.getLongitude())) return;
+        plan(location.getLatitude(), location.getLongitude(), null);
+    }
+
+    // Remove every geofence, e.g. when notifications are turned off
+    public void clear() {
+        client.removeGeofences(pendingIntent());
+        forgetPlan();
+    }
+
+    // The OS dropped the geofences (e.g. location turned off), the next location plans again
+    void forgetPlan() {
+        prefs.edit().remove(PREF_PLAN_TIME).apply();
+    }
+
+    private boolean isPlanCurrent(double lat, double lng) {
+        long planTime = prefs.getLong(PREF_PLAN_TIME, 0);
+        if (planTime == 0 || System.currentTimeMillis() - planTime > PLAN_MAX_AGE_MS) return false;
+        if (Math.abs(prefs.getLong(PREF_PLAN_BOOT, 0) - bootTime()) > BOOT_TOLERANCE_MS) return false;
+
+        float moved = SpatialIndex.distanceMeters(lat, lng,
+                prefs.getFloat(PREF_PLAN_LAT, 0), prefs.getFloat(PREF_PLAN_LNG, 0));
+        return moved < REPLAN_DISTANCE_METERS;
+    }
+
+    // Replaces all geofences with the nearest events around this point. onDone runs once the
+    // OS answered, so a receiver can keep its process alive until then.
+    void plan(double lat, double lng, @Nullable Runnable onDone) {
+        if (!hasPermission()) {
+            if (onDone != null) onDone.run();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        eventRepository.loadAround(lat, lng, SEARCH_RADIUS_METERS, now - EVENT_LINGER_MS, events -> {
+            if (events.isEmpty()) {
+                // Nothing to register and nothing worth remembering as a plan. Before the
+                // first sync that may only mean nothing was stored yet.
+                if (!eventRepository.isSynced()) {
+                    replanAfterSync(lat, lng);
+                }
+                if (onDone != null) onDone.run();
+                return;
+            }
+            register(lat, lng, events, now, onDone);
+        });
+    }
+
+    private void replanAfterSync(double lat, double lng) {
+        if (replanAfterSync) return;
+        replanAfterSync = true;
+        eventRepository.runAfterSync(() -> {
+            replanAfterSync = false;
+            if (prefs.getBoolean(Constants.PREF_NOTIFICATIONS_ENABLED, true)) {
+                plan(lat, lng, null);
+            }
+        });
+    }
+
+    private void register(double lat, double lng, List<Event> events, long now, @Nullable Runnable onDone) {
+        SpatialIndex index = new SpatialIndex();
+        for (Event event : events) {
+            index.add(event);
+        }
+        List<NearbyEvent> nearest = index.nearest(lat, lng, MAX_GEOFENCES);
+
+        List<Geofence> geofences = new ArrayList<>(nearest.size() + 1);
+        for (NearbyEvent item : nearest) {
+            Event event = item.event;
+            geofences.add(new Geofence.Builder()
+                    .setRequestId(event.getEventId())
+                    .setCircularRegion(event.getLatitude(), event.getLongitude(),
+                            Constants.PROXIMITY_RADIUS_METERS)
+                    .setExpirationDuration(Math.max(event.getDateTime() + EVENT_LINGER_MS - now, 60 * 1000L))
+                    .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_ENTER)
+                    .build());
+        }
+
+        // Any event left out is at least as far as the farthest one planned. Leaving this circle
+        // could bring one of them within the proximity radius, so the plan is redone there.
+        float replanRadius = nearest.size() < MAX_GEOFENCES
+                ? (float) (SEARCH_RADIUS_METERS / 2)
+                : Math.max(REPLAN_DISTANCE_METERS,
+                        nearest.get(nearest.size() - 1).distanceMeters - Constants.PROXIMITY_RADIUS_METERS);
+        geofences.add(new Geofence.Builder()
+                .setRequestId(REPLAN_ID)
+                .setCircularRegion(lat, lng, replanRadius)
+                .setExpirationDuration(Geofence.NEVER_EXPIRE)
+                .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_EXIT)
+                .build());
+
+        // Events the user is already next to notify right away
+        GeofencingRequest request = new GeofencingRequest.Builder()
+                .setInitialTrigger(GeofencingRequest.INITIAL_TRIGGER_ENTER)
+                .addGeofences(geofences)
+                .build();
+
+        PendingIntent pendingIntent = pendingIntent();
+        client.removeGeofences(pendingIntent).addOnCompleteListener(removed -> {
+            if (!hasPermission()) {
+                if (onDone != null) onDone.run();
+                return;
+            }
+            try {
+                client.addGeofences(request, pendingIntent).addOnCompleteListener(added -> {
+                    if (added.isSuccessful()) {
+                        prefs.edit()
+                                .putFloat(PREF_PLAN_LAT, (float) lat)
+                                .putFloat(PREF_PLAN_LNG, (float) lng)
+                                .putLong(PREF_PLAN_TIME, System.currentTimeMillis())
+                                .putLong(PREF_PLAN_BOOT, bootTime())
+                                .apply();
+                    }
+                    if (onDone != null) onDone.run();
+                });
+            } catch (SecurityException e) {
+                // Permission revoked in between
+                if (onDone != null) onDone.run();
+            }
+        });
+    }
+
+    // Geofences need the background permission too since Android 10, registering fails without it
+    private boolean hasPermission() {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            return false;
+        }
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q
+                || ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_BACKGROUND_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private PendingIntent pendingIntent() {
+        Intent intent = new Intent(context, GeofenceReceiver.class);
+        // The OS adds the transition details, so the intent must stay mutable
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            flags |= PendingIntent.FLAG_MUTABLE;
+        }
+        return PendingIntent.getBroadcast(context, 0, intent, flags);
+    }
+
+    private static long bootTime() {
+        return System.currentTimeMillis() - SystemClock.elapsedRealtime();
+    }
+}
@@ -0,0 +1,85 @@
+package com.stelandvag.unipicityvibes.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofenceStatusCodes;
+import com.google.android.gms.location.GeofencingEvent;
+import com.stelandvag.unipicityvibes.data.EventRepository;
+import com.stelandvag.unipicityvibes.data.NotifiedEventStore;
+import com.stelandvag.unipicityvibes.data.SpatialIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Geofence transitions from the OS, also delivered while the app is closed.
+// Entering an event's geofence shows the nearby notification, leaving the one around the user
+// re-plans the geofences from there.
+public class GeofenceReceiver extends BroadcastReceiver {
+
+    // The notified-events lookup may read the disk, it stays off the main thread
+    private static final ExecutorService background = Executors.newSingleThreadExecutor();
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        GeofencingEvent geofencingEvent = GeofencingEvent.fromIntent(intent);
+        if (geofencingEvent == null) return;
+
+        GeofenceManager manager = GeofenceManager.getInstance(context);
+        if (geofencingEvent.hasError()) {
+            if (geofencingEvent.getErrorCode() == GeofenceStatusCodes.GEOFENCE_NOT_AVAILABLE) {
+                manager.forgetPlan();
+            }
+            return;
+        }
+
+        Location location = geofencingEvent.getTriggeringLocation();
+        List<Geofence> geofences = geofencingEvent.getTriggeringGeofences();
+        if (location == null || geofences == null) return;
+
+        // Keep the process alive until the stored events are read, the notified ones are
+        // written and the OS answered
+        PendingResult result = goAsync();
+
+        if (geofencingEvent.getGeofenceTransition() == Geofence.GEOFENCE_TRANSITION_EXIT) {
+            manager.plan(location.getLatitude(), location.getLongitude(), result::finish);
+            return;
+        }
+
+        List<String> eventIds = new ArrayList<>();
+        for (Geofence geofence : geofences) {
+            if (!GeofenceManager.REPLAN_ID.equals(geofence.getRequestId())) {
+                eventIds.add(geofence.getRequestId());
+            }
+        }
+        if (eventIds.isEmpty()) {
+            result.finish();
+            return;
+        }
+
+        NotificationHelper notificationHelper = new NotificationHelper(context);
+        NotifiedEventStore notifiedEvents = NotifiedEventStore.getInstance(context);
+        EventRepository eventRepository = EventRepository.getInstance(context);
+        int[] remaining = {eventIds.size()};
+        for (String eventId : eventIds) {
+            eventRepository.loadCachedEvent(eventId, event -> background.execute(() -> {
+                if (event != null) {
+                    float distance = SpatialIndex.distanceMeters(location.getLatitude(),
+                            location.getLongitude(), event.getLatitude(), event.getLongitude());
+                    notificationHelper.showNearbyEventNotification(event, distance);
+                }
+                // Counted on the one background thread. A flush left scheduled would die with
+                // the process and the same events would be announced again.
+                if (--remaining[0] == 0) {
+                    notifiedEvents.flushNow();
+                    result.finish();
+                }
+            }));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.stelandvag.unipicityvibes.utils;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationAvailability;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Process-wide location updates shared by the screens that need them.
+// Updates run only while someone listens, at the most accurate priority any listener asked for.
+// A recent fix is handed out right away instead of waking the GPS again, and each listener hears
+// about a new location only once it moved MIN_DISPLACEMENT_METERS from the last one it got,
+// also across a pause and resume.
+//
+// Main thread only.
+public class LocationTracker {
+
+    // A fix younger than this is reused as is
+    private static final long FRESH_FIX_MS = 2 * 60 * 1000L;
+    // Moves shorter than this do not change anything the screens show
+    private static final float MIN_DISPLACEMENT_METERS = 200;
+
+    private static LocationTracker instance;
+
+    public interface Listener {
+        // A fresh location that differs enough from the previous one
+        void onLocationChanged(Location location);
+        // No fix could be obtained, e.g. location is turned off
+        void onLocationUnavailable();
+    }
+
+    private final Context context;
+    private final FusedLocationProviderClient client;
+    // Listener to the priority it needs (Priority.PRIORITY_*)
+    private final Map<Listener, Integer> listeners = new HashMap<>();
+    // Last location each listener got. Weak, a screen that is gone should not be kept for this.
+    private final Map<Listener, Location> delivered = new WeakHashMap<>();
+    private Location lastFix;
+    private int activePriority = -1;
+
+    private LocationTracker(Context context) {
+        this.context = context;
+        this.client = LocationServices.getFusedLocationProviderClient(context);
+    }
+
+    public static LocationTracker getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocationTracker(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Start listening, e.g. in onResume. The listener gets a recent fix right away if there is one
+    // and it moved away from the location the listener last got.
+    public void addListener(Listener listener, int priority) {
+        if (!hasPermission()) return;
+        boolean added = listeners.put(listener, priority) == null;
+
+        if (added && lastFix != null && isFresh(lastFix)) {
+            deliver(listener, lastFix);
+        } else if (added) {
+            // Whatever the OS already knows beats waiting for the first update
+            try {
+                client.getLastLocation().addOnSuccessListener(location -> {
+                    if (location != null && isFresh(location)) {
+                        onFix(location);
+                    }
+                });
+            } catch (SecurityException e) {
+                // Revoked in between, requestUpdates below fails the same way
+            }
+        }
+        requestUpdates();
+    }
+
+    // Stop listening, e.g. in onPause. Updates stop with the last listener.
+    public void removeListener(Listener listener) {
+        if (listeners.remove(listener) == null) return;
+        requestUpdates();
+    }
+
+    private void requestUpdates() {
+        int priority = -1;
+        for (int needed : listeners.values()) {
+            // Lower values are more accurate
+            priority = priority == -1 ? needed : Math.min(priority, needed);
+        }
+        if (priority == activePriority) return;
+
+        client.removeLocationUpdates(callback);
+        activePriority = priority;
+        if (priority == -1 || !hasPermission()) {
+            activePriority = -1;
+            return;
+        }
+
+        LocationRequest request = new LocationRequest.Builder(priority, Constants.LOCATION_UPDATE_INTERVAL)
+                .setMinUpdateIntervalMillis(Constants.LOCATION_FASTEST_INTERVAL)
+                .setMinUpdateDistanceMeters(MIN_DISPLACEMENT_METERS / 2)
+                .build();
+        try {
+            client.requestLocationUpdates(request, callback, Looper.getMainLooper());
+        } catch (SecurityException e) {
+            activePriority = -1;
+        }
+    }
+
+    private final LocationCallback callback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult result) {
+            Location location = result.getLastLocation();
+            if (location != null) {
+                onFix(location);
+            }
+        }
+
+        @Override
+        public void onLocationAvailability(@NonNull LocationAvailability availability) {
+            if (availability.isLocationAvailable() || (lastFix != null && isFresh(lastFix))) return;
+            for (Listener listener : new ArrayList<>(listeners.keySet())) {
+                listener.onLocationUnavailable();
+            }
+        }
+    };
+
+    private void onFix(Location location) {
+        lastFix = location;
+        for (Listener listener : new ArrayList<>(listeners.keySet())) {
+            deliver(listener, location);
+        }
+    }
+
+    // A listener that never got a location takes any fix
+    private void deliver(Listener listener, Location location) {
+        Location previous = delivered.get(listener);
+        if (previous != null && previous.distanceTo(location) < MIN_DISPLACEMENT_METERS) return;
+        delivered.put(listener, location);
+        listener.onLocationChanged(location);
+    }
+
+    private static boolean isFresh(Location location) {
+        long ageNanos = SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos();
+        return ageNanos < FRESH_FIX_MS * 1_000_000L;
+    }
+
+    private boolean hasPermission() {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED
+                || ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+}
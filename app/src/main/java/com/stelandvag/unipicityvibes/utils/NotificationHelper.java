@@ -12,29 +12,29 @@ import androidx.core.app.NotificationCompat;
 
 import com.stelandvag.unipicityvibes.R;
 import com.stelandvag.unipicityvibes.activities.EventDetailActivity;
+import com.stelandvag.unipicityvibes.data.BookingService;
+import com.stelandvag.unipicityvibes.data.NotifiedEventStore;
+import com.stelandvag.unipicityvibes.data.PendingOp;
 import com.stelandvag.unipicityvibes.models.Event;
 
-import java.util.HashSet;
-import java.util.Set;
-
 public class NotificationHelper {
 
     private static final String CHANNEL_ID = "nearby_events";
     private static final String CHANNEL_NAME = "Nearby Events";
-    private static final String PREFS_NOTIFIED_EVENTS = "notified_events";
+    private static final String BOOKING_CHANNEL_ID = "bookings";
+    private static final String BOOKING_CHANNEL_NAME = "Bookings";
 
     private Context context;
     private NotificationManager notificationManager;
     private SharedPreferences prefs;
-    private Set<String> notifiedEventIds;
+    // Shared by every helper in the process, read from disk on the first check
+    private NotifiedEventStore notifiedEvents;
 
     public NotificationHelper(Context context) {
         this.context = context;
         this.notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
         this.prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
-
-        // Load already notified events (to avoid spamming)
-        this.notifiedEventIds = new HashSet<>(prefs.getStringSet(PREFS_NOTIFIED_EVENTS, new HashSet<>()));
+        this.notifiedEvents = NotifiedEventStore.getInstance(context);
 
         createNotificationChannel();
     }
@@ -48,9 +48,18 @@ public class NotificationHelper {
             );
             channel.setDescription("Notifications for nearby events");
             notificationManager.createNotificationChannel(channel);
+
+            NotificationChannel bookingChannel = new NotificationChannel(
+                    BOOKING_CHANNEL_ID,
+                    BOOKING_CHANNEL_NAME,
+                    NotificationManager.IMPORTANCE_DEFAULT
+            );
+            bookingChannel.setDescription("Outcome of bookings made while offline");
+            notificationManager.createNotificationChannel(bookingChannel);
         }
     }
 
+    // Looks the event up in the notified store, call off the main thread
     public void showNearbyEventNotification(Event event, float distanceMeters) {
         // Check if notifications are enabled
         boolean notificationsEnabled = prefs.getBoolean(Constants.PREF_NOTIFICATIONS_ENABLED, true);
@@ -59,13 +68,13 @@ public class NotificationHelper {
         }
 
         // Check if we already notified about this event
-        if (notifiedEventIds.contains(event.getEventId())) {
+        if (notifiedEvents.isNotified(event.getEventId())) {
             return;
         }
 
         // Create intent to open event details
-        Intent intent = new Intent(context, EventDetailActivity.class);
-        intent.putExtra(EventDetailActivity.EXTRA_EVENT_ID, event.getEventId());
+        // Carries the event so the tap opens a fully drawn screen even on a cold start
+        Intent intent = EventDetailActivity.newIntent(context, event);
         intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
 
         PendingIntent pendingIntent = PendingIntent.getActivity(
@@ -93,13 +102,53 @@ public class NotificationHelper {
         // Show notification
         notificationManager.notify(event.getEventId().hashCode(), builder.build());
 
-        // Mark as notified
-        notifiedEventIds.add(event.getEventId());
-        prefs.edit().putStringSet(PREFS_NOTIFIED_EVENTS, notifiedEventIds).apply();
+        // Mark as notified (to avoid spamming), until the event is over
+        notifiedEvents.markNotified(event.getEventId(), event.getDateTime());
+    }
+
+    // Tells the user how a queued booking or cancellation ended once it reached the server
+    public void showBookingNotification(PendingOp op, BookingService.Result result) {
+        String text;
+        if (op.type == PendingOp.Type.CANCEL) {
+            text = "Your cancellation could not be sent";
+        } else {
+            switch (result) {
+                case BOOKED:
+                case ALREADY_BOOKED:
+                    text = "Your seat is confirmed 🎉";
+                    break;
+                case SOLD_OUT:
+                    text = "Sorry, the event sold out before your booking went through";
+                    break;
+                default:
+                    text = "Your booking could not be completed";
+                    break;
+            }
+        }
+
+        Intent intent = new Intent(context, EventDetailActivity.class);
+        intent.putExtra(EventDetailActivity.EXTRA_EVENT_ID, op.eventId);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+                context,
+                op.key().hashCode(),
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, BOOKING_CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_notification)
+                .setContentTitle(op.eventTitle)
+                .setContentText(text)
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                .setContentIntent(pendingIntent)
+                .setAutoCancel(true);
+
+        notificationManager.notify(op.key().hashCode(), builder.build());
     }
 
     public void clearNotifiedEvents() {
-        notifiedEventIds.clear();
-        prefs.edit().remove(PREFS_NOTIFIED_EVENTS).apply();
+        notifiedEvents.clear();
     }
 }
\ No newline at end of file
@@ -0,0 +1,295 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+import com.stelandvag.unipicityvibes.models.Reservation;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fires thousands of concurrent bookings at BookingService on a local stand-in database
+ * and checks that no event is oversold and no user holds two seats for the same event.
+ */
+public class BookingLoadTest {
+
+    private static final int THREADS = 32;
+    private static final int USERS = 3000;
+    private static final int ATTEMPTS_PER_USER = 2;
+    private static final String[] EVENTS = {"concert", "festival", "theater"};
+    private static final int CAPACITY = 400;
+    private static final int SHARDS = 8;
+
+    @Test
+    public void concurrentBookings_neverOversell() throws Exception {
+        runLoad(0.0, 1);
+    }
+
+    @Test
+    public void failedCommits_releaseTheirSeats() throws Exception {
+        runLoad(0.1, 1);
+    }
+
+    @Test
+    public void shardedBookings_neverOversell() throws Exception {
+        runLoad(0.0, SHARDS);
+    }
+
+    @Test
+    public void shardedFailedCommits_releaseTheirShardSeats() throws Exception {
+        runLoad(0.1, SHARDS);
+    }
+
+    @Test
+    public void attemptWhileAnotherRuns_isInProgress() {
+        LocalBookingBackend backend = new LocalBookingBackend(0.0);
+        backend.addEvent("concert", CAPACITY);
+        backend.keys.put(BookingService.idempotencyKey("concert", "user"), System.currentTimeMillis());
+
+        assertEquals(BookingService.Result.IN_PROGRESS, book(backend, event("concert", 0), "user"));
+        assertEquals(0, backend.booked("concert"));
+    }
+
+    @Test
+    public void firstBooking_setsUpTheCounterFromTheEvent() {
+        LocalBookingBackend backend = new LocalBookingBackend(0.0);
+        backend.addEvent("concert", CAPACITY);
+        // Committed before the counter existed
+        backend.eventBooked.get("concert").set(CAPACITY - 1);
+
+        assertEquals(BookingService.Result.BOOKED, book(backend, event("concert", 0), "first"));
+        assertEquals(BookingService.Result.SOLD_OUT, book(backend, event("concert", 0), "second"));
+        assertEquals(CAPACITY, backend.booked("concert"));
+        assertEquals(CAPACITY, backend.eventBooked.get("concert").get());
+    }
+
+    @Test
+    public void firstShardedBooking_splitsTheSeatsLeftOverTheShards() {
+        LocalBookingBackend backend = new LocalBookingBackend(0.0);
+        backend.addShardedEvent("concert", CAPACITY, SHARDS);
+        backend.eventBooked.get("concert").set(CAPACITY - 3);
+
+        for (int user = 0; user < 3; user++) {
+            assertEquals(BookingService.Result.BOOKED, book(backend, event("concert", SHARDS), "user" + user));
+        }
+        assertEquals(BookingService.Result.SOLD_OUT, book(backend, event("concert", SHARDS), "late"));
+        assertEquals(CAPACITY, backend.booked("concert"));
+        assertEquals(CAPACITY, backend.eventBooked.get("concert").get());
+    }
+
+    @Test
+    public void staleClaim_givesItsSeatBackOnTakeover() {
+        LocalBookingBackend backend = new LocalBookingBackend(0.0);
+        backend.addEvent("concert", CAPACITY);
+        backend.setUpSeats("concert", ignore());
+        abandonBooking(backend, "concert", "user");
+        backend.incrementSeats("concert", "user", ignore());
+
+        assertEquals(BookingService.Result.BOOKED, book(backend, event("concert", 0), "user"));
+        assertEquals(1, backend.booked("concert"));
+        assertTrue(backend.holders("concert").isEmpty());
+    }
+
+    @Test
+    public void staleShardClaim_givesItsSeatBackOnTakeover() {
+        LocalBookingBackend backend = new LocalBookingBackend(0.0);
+        backend.addShardedEvent("concert", CAPACITY, SHARDS);
+        backend.setUpSeats("concert", ignore());
+        abandonBooking(backend, "concert", "user");
+        backend.incrementShard("concert", 3, "user", ignore());
+
+        assertEquals(BookingService.Result.BOOKED, book(backend, event("concert", SHARDS), "user"));
+        assertEquals(1, backend.booked("concert"));
+    }
+
+    @Test
+    public void repeatedCancel_givesTheSeatBackOnce() {
+        for (int shardCount : new int[] {1, SHARDS}) {
+            LocalBookingBackend backend = new LocalBookingBackend(0.0);
+            if (shardCount > 1) {
+                backend.addShardedEvent("concert", CAPACITY, shardCount);
+            } else {
+                backend.addEvent("concert", CAPACITY);
+            }
+            book(backend, event("concert", shardCount), "user");
+            book(backend, event("concert", shardCount), "other");
+            Reservation reservation = backend.reservations.get("r-user");
+
+            // e.g. a second device, a replay of the log or a stale list
+            cancel(backend, reservation, shardCount);
+            cancel(backend, reservation, shardCount);
+
+            assertEquals(1, backend.booked("concert"));
+            assertEquals(1, backend.eventBooked.get("concert").get());
+        }
+    }
+
+    @Test
+    public void staleCancel_afterBookingAgain_keepsTheNewReservation() {
+        LocalBookingBackend backend = new LocalBookingBackend(0.0);
+        backend.addEvent("concert", CAPACITY);
+        book(backend, event("concert", 0), "user");
+        Reservation first = backend.reservations.get("r-user");
+        cancel(backend, first, 0);
+        Reservation again = new Reservation("r-again", "concert", "user", "user", 0);
+        new BookingService(backend).book(event("concert", 0), again, (result, message) -> {});
+
+        cancel(backend, first, 0);
+
+        assertEquals(1, backend.booked("concert"));
+        assertEquals("r-again", backend.keys.get(BookingService.idempotencyKey("concert", "user")));
+    }
+
+    // A cancellation sent again is reported as cancelled too
+    private static void cancel(LocalBookingBackend backend, Reservation reservation, int shardCount) {
+        BookingService.Result[] result = new BookingService.Result[1];
+        new BookingService(backend).cancel(reservation, shardCount > 1,
+                (outcome, message) -> result[0] = outcome);
+        assertEquals(BookingService.Result.CANCELLED, result[0]);
+    }
+
+    // A claim whose booking died half-way, older than the takeover timeout
+    private static void abandonBooking(LocalBookingBackend backend, String eventId, String userId) {
+        backend.keys.put(BookingService.idempotencyKey(eventId, userId),
+                System.currentTimeMillis() - LocalBookingBackend.CLAIM_TIMEOUT_MS - 1);
+    }
+
+    private static Event event(String eventId, int shardCount) {
+        Event event = new Event();
+        event.setEventId(eventId);
+        event.setCapacity(CAPACITY);
+        event.setSeatShards(shardCount);
+        return event;
+    }
+
+    // The local backend answers synchronously
+    private static BookingService.Result book(LocalBookingBackend backend, Event event, String userId) {
+        BookingService.Result[] result = new BookingService.Result[1];
+        Reservation reservation = new Reservation("r-" + userId, event.getEventId(), userId, userId,
+                System.currentTimeMillis());
+        new BookingService(backend).book(event, reservation, (outcome, message) -> result[0] = outcome);
+        return result[0];
+    }
+
+    private static <T> BookingBackend.Callback<T> ignore() {
+        return new BookingBackend.Callback<T>() {
+            @Override
+            public void onSuccess(T result) {}
+
+            @Override
+            public void onFailure(String message) {}
+        };
+    }
+
+    private void runLoad(double commitFailureRate, int shardCount) throws Exception {
+        LocalBookingBackend backend = new LocalBookingBackend(commitFailureRate);
+        Map<String, Event> events = new HashMap<>();
+        for (String eventId : EVENTS) {
+            events.put(eventId, event(eventId, shardCount));
+            if (shardCount > 1) {
+                backend.addShardedEvent(eventId, CAPACITY, shardCount);
+            } else {
+                backend.addEvent(eventId, CAPACITY);
+            }
+        }
+        BookingService service = new BookingService(backend);
+
+        int total = USERS * ATTEMPTS_PER_USER;
+        Map<BookingService.Result, AtomicInteger> results = new ConcurrentHashMap<>();
+        for (BookingService.Result result : BookingService.Result.values()) {
+            results.put(result, new AtomicInteger());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(total);
+        AtomicInteger reservationIds = new AtomicInteger();
+
+        for (int attempt = 0; attempt < ATTEMPTS_PER_USER; attempt++) {
+            for (int user = 0; user < USERS; user++) {
+                String userId = "user" + user;
+                String eventId = EVENTS[user % EVENTS.length];
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    Reservation reservation = new Reservation("r" + reservationIds.incrementAndGet(),
+                            eventId, userId, userId, System.currentTimeMillis());
+                    service.book(events.get(eventId), reservation, (result, message) -> {
+                        results.get(result).incrementAndGet();
+                        done.countDown();
+                    });
+                });
+            }
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        assertTrue("Bookings did not finish", done.await(60, TimeUnit.SECONDS));
+        long elapsedNanos = System.nanoTime() - startNanos;
+        pool.shutdown();
+
+        // Report
+        int oversold = 0;
+        for (String eventId : EVENTS) {
+            oversold += Math.max(0, backend.booked(eventId) - CAPACITY);
+        }
+        System.out.printf("%d shard(s): %d bookings in %.1f ms (%.0f/s), %d CAS retries, oversold %d, results %s%n",
+                shardCount, total, elapsedNanos / 1e6, total / (elapsedNanos / 1e9),
+                backend.retries.get(), oversold, results);
+
+        // Counters match the committed reservations and never exceed capacity
+        assertEquals(0, oversold);
+        for (String eventId : EVENTS) {
+            int committed = 0;
+            for (Reservation reservation : backend.reservations.values()) {
+                if (reservation.getEventId().equals(eventId)) committed++;
+            }
+            assertEquals(eventId, committed, backend.booked(eventId));
+            // The event counts them too, sharded or not
+            assertEquals(eventId, committed, backend.eventBooked.get(eventId).get());
+        }
+        assertEquals(results.get(BookingService.Result.BOOKED).get(), backend.reservations.size());
+
+        // Every seat taken was either committed or given back, no mark is left behind
+        for (Set<String> marks : backend.holders.values()) {
+            assertTrue(marks.isEmpty());
+        }
+
+        // At most one reservation per user and event
+        Set<String> seen = new HashSet<>();
+        for (Reservation reservation : backend.reservations.values()) {
+            assertTrue(seen.add(reservation.getEventId() + "/" + reservation.getUserId()));
+        }
+
+        // Each shard stays within the capacity stored on it
+        if (shardCount > 1) {
+            for (String eventId : EVENTS) {
+                AtomicInteger[] counters = backend.shards.get(eventId);
+                for (int shard = 0; shard < shardCount; shard++) {
+                    assertTrue(counters[shard].get() <= backend.shardCapacities.get(eventId)[shard]);
+                }
+            }
+        }
+
+        // Without failures every event fills up exactly
+        if (commitFailureRate == 0) {
+            for (String eventId : EVENTS) {
+                assertEquals(CAPACITY, backend.booked(eventId));
+            }
+        }
+    }
+}
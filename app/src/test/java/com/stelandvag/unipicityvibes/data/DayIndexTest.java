@@ -0,0 +1,123 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.stelandvag.unipicityvibes.data.SortedEventListTest.ids;
+import static org.junit.Assert.*;
+
+public class DayIndexTest {
+
+    private static final ZoneId ATHENS = ZoneId.of("Europe/Athens");
+
+    @Test
+    public void eventsAreBucketedByLocalDay_inDateOrder() {
+        List<Event> events = Arrays.asList(
+                event("morning", at(2024, 5, 10, 9, 0)),
+                event("evening", at(2024, 5, 10, 21, 30)),
+                event("next", at(2024, 5, 11, 12, 0)));
+
+        DayIndex index = DayIndex.build(events, ATHENS, live());
+
+        assertEquals(Arrays.asList("morning", "evening"), ids(index.eventsOn(LocalDate.of(2024, 5, 10))));
+        assertEquals(1, index.countOn(LocalDate.of(2024, 5, 11)));
+        assertEquals(0, index.countOn(LocalDate.of(2024, 5, 12)));
+        assertTrue(index.eventsOn(LocalDate.of(2024, 5, 12)).isEmpty());
+    }
+
+    @Test
+    public void midnight_belongsToTheNewDay() {
+        DayIndex index = DayIndex.build(Arrays.asList(
+                event("lastMinute", at(2024, 5, 10, 23, 59)),
+                event("midnight", at(2024, 5, 11, 0, 0))), ATHENS, live());
+
+        assertEquals(Arrays.asList("lastMinute"), ids(index.eventsOn(LocalDate.of(2024, 5, 10))));
+        assertEquals(Arrays.asList("midnight"), ids(index.eventsOn(LocalDate.of(2024, 5, 11))));
+    }
+
+    @Test
+    public void daysFollowTheZone_notUtc() {
+        // 00:30 in Athens is still the previous day in UTC
+        DayIndex index = DayIndex.build(Arrays.asList(event("late", at(2024, 5, 11, 0, 30))),
+                ATHENS, live());
+
+        assertEquals(1, index.countOn(LocalDate.of(2024, 5, 11)));
+        assertEquals(0, index.countOn(LocalDate.of(2024, 5, 10)));
+        assertEquals(ATHENS, index.getZone());
+    }
+
+    @Test
+    public void daylightSavingChanges_keepEventsOnTheirDay() {
+        // Clocks go forward on 31 March 2024 and back on 27 October 2024 in Athens
+        DayIndex index = DayIndex.build(Arrays.asList(
+                event("beforeSpring", at(2024, 3, 30, 23, 30)),
+                event("afterSpring", at(2024, 3, 31, 0, 30)),
+                event("autumnLate", at(2024, 10, 27, 23, 30)),
+                event("autumnNext", at(2024, 10, 28, 0, 15))), ATHENS, live());
+
+        assertEquals(Arrays.asList("beforeSpring"), ids(index.eventsOn(LocalDate.of(2024, 3, 30))));
+        assertEquals(Arrays.asList("afterSpring"), ids(index.eventsOn(LocalDate.of(2024, 3, 31))));
+        assertEquals(Arrays.asList("autumnLate"), ids(index.eventsOn(LocalDate.of(2024, 10, 27))));
+        assertEquals(Arrays.asList("autumnNext"), ids(index.eventsOn(LocalDate.of(2024, 10, 28))));
+    }
+
+    @Test
+    public void eventsBefore1970_landOnTheirDay() {
+        DayIndex index = DayIndex.build(Arrays.asList(event("old", at(1969, 12, 31, 12, 0))),
+                ATHENS, live());
+
+        assertEquals(1, index.countOn(LocalDate.of(1969, 12, 31)));
+    }
+
+    @Test
+    public void buckets_areReadOnly() {
+        DayIndex index = DayIndex.build(Arrays.asList(event("a", at(2024, 5, 10, 9, 0))), ATHENS, live());
+
+        try {
+            index.eventsOn(LocalDate.of(2024, 5, 10)).add(event("b", 0));
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            // Shared with the main thread
+        }
+    }
+
+    @Test
+    public void cancelledBuild_stopsEarly() {
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            events.add(event("e" + i, at(2024, 5, 10, 9, 0) + i));
+        }
+        AtomicInteger current = new AtomicInteger(1);
+
+        DayIndex index = DayIndex.build(events, ATHENS, new EventPipeline.Generation(current, 0));
+
+        assertEquals(0, index.countOn(LocalDate.of(2024, 5, 10)));
+    }
+
+    @Test
+    public void empty_hasNoEvents() {
+        assertEquals(0, DayIndex.EMPTY.countOn(LocalDate.of(2024, 5, 10)));
+        assertEquals(0, DayIndex.build(new ArrayList<>(), ATHENS, live()).countOn(LocalDate.of(2024, 5, 10)));
+    }
+
+    private static long at(int year, int month, int day, int hour, int minute) {
+        return LocalDateTime.of(year, month, day, hour, minute).atZone(ATHENS).toInstant().toEpochMilli();
+    }
+
+    private static Event event(String id, long dateTime) {
+        return SortedEventListTest.event(id, dateTime);
+    }
+
+    private static EventPipeline.Generation live() {
+        return new EventPipeline.Generation(new AtomicInteger(0), 0);
+    }
+}
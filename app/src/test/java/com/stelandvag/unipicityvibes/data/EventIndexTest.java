@@ -0,0 +1,139 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.stelandvag.unipicityvibes.data.SortedEventListTest.ids;
+import static org.junit.Assert.*;
+
+public class EventIndexTest {
+
+    private static final Set<String> ALL = new HashSet<>(Arrays.asList("music", "theater", "sports"));
+
+    @Test
+    public void upcoming_mergesCategoriesByDate_tiesById() {
+        EventIndex index = new EventIndex();
+        index.add(event("b", "music", 200, 0));
+        index.add(event("a", "theater", 200, 0));
+        index.add(event("c", "sports", 100, 0));
+        index.add(event("d", "music", 300, 0));
+
+        assertEquals(Arrays.asList("c", "a", "b", "d"), ids(index.upcoming(ALL, 0, 10)));
+    }
+
+    @Test
+    public void upcoming_includesAnEventStartingNow_skipsPastOnes() {
+        EventIndex index = new EventIndex();
+        index.add(event("past", "music", 99, 0));
+        index.add(event("now", "music", 100, 0));
+        index.add(event("later", "theater", 101, 0));
+
+        assertEquals(Arrays.asList("now", "later"), ids(index.upcoming(ALL, 100, 10)));
+    }
+
+    @Test
+    public void upcoming_onlySelectedCategories_upToTheLimit() {
+        EventIndex index = new EventIndex();
+        for (int i = 0; i < 5; i++) {
+            index.add(event("m" + i, "music", 100 + i, 0));
+            index.add(event("t" + i, "theater", 100 + i, 0));
+        }
+
+        assertEquals(Arrays.asList("m0", "m1", "m2"),
+                ids(index.upcoming(Collections.singleton("music"), 0, 3)));
+        assertTrue(index.upcoming(Collections.singleton("cinema"), 0, 3).isEmpty());
+        assertTrue(index.upcoming(ALL, 0, 0).isEmpty());
+    }
+
+    @Test
+    public void trending_equalBookings_soonestFirst() {
+        EventIndex index = new EventIndex();
+        index.add(event("late", "music", 300, 5));
+        index.add(event("early", "music", 100, 5));
+        index.add(event("top", "theater", 200, 9));
+        index.add(event("past", "music", 50, 20));
+
+        assertEquals(Arrays.asList("top", "early", "late"), ids(index.trending(ALL, 100, 10)));
+        assertEquals(Arrays.asList("top"), ids(index.trending(ALL, 100, 1)));
+    }
+
+    @Test
+    public void cheapest_futureEventsByPrice_tiesSoonestFirst() {
+        EventIndex index = new EventIndex();
+        index.add(priced("free", "music", 300, 0));
+        index.add(priced("cheapLate", "theater", 200, 5));
+        index.add(priced("cheapEarly", "music", 100, 5));
+        index.add(priced("pastFree", "music", 50, 0));
+        index.add(priced("cinema", "cinema", 100, 1));
+
+        assertEquals(Arrays.asList("free", "cheapEarly", "cheapLate"), ids(index.cheapest(ALL, 100, 10)));
+        assertEquals(Arrays.asList("free"), ids(index.cheapest(ALL, 100, 1)));
+    }
+
+    @Test
+    public void upcomingInCategory_onlyThatCategoryFromNowOn() {
+        EventIndex index = new EventIndex();
+        index.add(event("past", "music", 50, 0));
+        index.add(event("first", "music", 100, 0));
+        index.add(event("theater", "theater", 150, 0));
+        index.add(event("second", "music", 200, 0));
+
+        assertEquals(Arrays.asList("first", "second"), ids(index.upcomingInCategory("music", 100, 10)));
+        assertEquals(Arrays.asList("first"), ids(index.upcomingInCategory("music", 100, 1)));
+        assertTrue(index.upcomingInCategory("cinema", 0, 10).isEmpty());
+    }
+
+    @Test
+    public void replace_updatesEveryOrdering() {
+        EventIndex index = new EventIndex();
+        Event a = event("a", "music", 100, 1);
+        index.add(a);
+        index.add(event("b", "music", 200, 5));
+
+        // More bookings, a later date, another category and a higher price
+        Event changed = event("a", "theater", 300, 9);
+        changed.setPrice(20);
+        index.replace(a, changed);
+
+        assertEquals(Arrays.asList("b", "a"), ids(index.byDate()));
+        assertEquals(Arrays.asList("b", "a"), ids(index.cheapest(ALL, 0, 10)));
+        assertEquals(Arrays.asList("a", "b"), ids(index.trending(ALL, 0, 10)));
+        assertEquals(Arrays.asList("b"), ids(index.upcoming(Collections.singleton("music"), 0, 10)));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void remove_dropsTheEventEverywhere() {
+        EventIndex index = new EventIndex();
+        Event a = event("a", "music", 100, 1);
+        index.add(a);
+        index.add(event("b", "music", 100, 1));
+
+        index.remove(a);
+
+        assertEquals(Arrays.asList("b"), ids(index.byDate()));
+        assertEquals(Arrays.asList("b"), ids(index.trending(ALL, 0, 10)));
+        assertEquals(Arrays.asList("b"), ids(index.upcoming(ALL, 0, 10)));
+        assertEquals(Arrays.asList("b"), ids(index.cheapest(ALL, 0, 10)));
+        assertEquals(Arrays.asList("b"), ids(index.upcomingInCategory("music", 0, 10)));
+    }
+
+    private static Event priced(String id, String category, long dateTime, double price) {
+        Event event = event(id, category, dateTime, 0);
+        event.setPrice(price);
+        return event;
+    }
+
+    private static Event event(String id, String category, long dateTime, int bookedSeats) {
+        Event event = SortedEventListTest.event(id, dateTime);
+        event.setCategory(category);
+        event.setBookedSeats(bookedSeats);
+        return event;
+    }
+}
@@ -0,0 +1,221 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Reservation;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-memory stand-in for the database with the same optimistic transaction semantics:
+// the seat counter is a compare-and-set loop that retries when another booking won the race.
+// The claim keeps a user to one attempt per event at a time, so the seat marks need no CAS of their own.
+class LocalBookingBackend implements BookingBackend {
+
+    static final long CLAIM_TIMEOUT_MS = 2 * 60 * 1000;
+
+    // The event node: its capacity and committed seats (bookedSeats)
+    final Map<String, Integer> eventCapacities = new ConcurrentHashMap<>();
+    final Map<String, AtomicInteger> eventBooked = new ConcurrentHashMap<>();
+    final Map<String, Integer> eventShards = new ConcurrentHashMap<>();
+    // Counters, like eventSeats/{eventId} and seatShards/{eventId}, created by setUpSeats
+    final Map<String, AtomicInteger> bookedSeats = new ConcurrentHashMap<>();
+    final Map<String, Integer> capacities = new ConcurrentHashMap<>();
+    final Map<String, AtomicInteger[]> shards = new ConcurrentHashMap<>();
+    // Capacity stored on each shard, like seatShards/{eventId}/{shard}/capacity
+    final Map<String, int[]> shardCapacities = new ConcurrentHashMap<>();
+    // Seat marks per counter, the event id or "{eventId}/{shard}"
+    final Map<String, Set<String>> holders = new ConcurrentHashMap<>();
+    // Placeholder timestamp while a booking is in flight, the reservation id once committed
+    final Map<String, Object> keys = new ConcurrentHashMap<>();
+    final Map<String, Reservation> reservations = new ConcurrentHashMap<>();
+    final AtomicLong retries = new AtomicLong();
+
+    // Share of reservation commits that fail, to exercise the rollback path
+    private final double commitFailureRate;
+    private final Random random = new Random(42);
+
+    LocalBookingBackend(double commitFailureRate) {
+        this.commitFailureRate = commitFailureRate;
+    }
+
+    // The counters are set up by the first booking
+    void addEvent(String eventId, int capacity) {
+        eventCapacities.put(eventId, capacity);
+        eventBooked.put(eventId, new AtomicInteger());
+    }
+
+    void addShardedEvent(String eventId, int capacity, int shardCount) {
+        addEvent(eventId, capacity);
+        eventShards.put(eventId, shardCount);
+    }
+
+    // Seats taken on the counters, for a sharded event the sum of its shards plus what the
+    // event had booked when they were set up
+    int booked(String eventId) {
+        AtomicInteger[] counters = shards.get(eventId);
+        if (counters == null) {
+            AtomicInteger counter = bookedSeats.get(eventId);
+            return counter == null ? 0 : counter.get();
+        }
+        int sum = eventCapacities.get(eventId);
+        for (int capacity : shardCapacities.get(eventId)) {
+            sum -= capacity;
+        }
+        for (AtomicInteger counter : counters) {
+            sum += counter.get();
+        }
+        return sum;
+    }
+
+    @Override
+    public void claimKey(String eventId, String userId, Callback<Claim> callback) {
+        long now = System.currentTimeMillis();
+        Claim[] claim = new Claim[1];
+        keys.compute(BookingService.idempotencyKey(eventId, userId), (key, value) -> {
+            if (value == null) {
+                claim[0] = Claim.CLAIMED;
+                return now;
+            }
+            if (value instanceof Long && now - (Long) value > CLAIM_TIMEOUT_MS) {
+                claim[0] = Claim.TAKEN_OVER;
+                return now;
+            }
+            claim[0] = value instanceof String ? Claim.BOOKED : Claim.IN_PROGRESS;
+            return value;
+        });
+        callback.onSuccess(claim[0]);
+    }
+
+    @Override
+    public void releaseKey(String eventId, String userId) {
+        keys.remove(BookingService.idempotencyKey(eventId, userId));
+    }
+
+    @Override
+    public void setUpSeats(String eventId, Callback<Void> callback) {
+        // Both come from one read of the event, then the counters are only created if missing
+        synchronized (capacities) {
+            int capacity = eventCapacities.get(eventId);
+            int booked = eventBooked.get(eventId).get();
+            Integer shardCount = eventShards.get(eventId);
+            if (shardCount != null && !shards.containsKey(eventId)) {
+                AtomicInteger[] counters = new AtomicInteger[shardCount];
+                int[] shardCapacity = new int[shardCount];
+                for (int i = 0; i < shardCount; i++) {
+                    counters[i] = new AtomicInteger();
+                    shardCapacity[i] = BookingService.shardCapacity(capacity - booked, shardCount, i);
+                }
+                shardCapacities.put(eventId, shardCapacity);
+                shards.put(eventId, counters);
+            } else if (shardCount == null && !capacities.containsKey(eventId)) {
+                capacities.put(eventId, capacity);
+                bookedSeats.put(eventId, new AtomicInteger(booked));
+            }
+        }
+        callback.onSuccess(null);
+    }
+
+    @Override
+    public void incrementSeats(String eventId, String userId, Callback<Integer> callback) {
+        AtomicInteger counter = bookedSeats.get(eventId);
+        if (counter == null) {
+            callback.onSuccess(NOT_SET_UP);
+            return;
+        }
+        take(counter, capacities.get(eventId), holders(eventId), userId, callback);
+    }
+
+    @Override
+    public void releaseHeldSeat(String eventId, String userId, Callback<Void> callback) {
+        if (holders(eventId).remove(userId)) {
+            bookedSeats.get(eventId).decrementAndGet();
+        }
+        callback.onSuccess(null);
+    }
+
+    @Override
+    public void incrementShard(String eventId, int shard, String userId, Callback<Integer> callback) {
+        if (!shards.containsKey(eventId)) {
+            callback.onSuccess(NOT_SET_UP);
+            return;
+        }
+        take(shards.get(eventId)[shard], shardCapacities.get(eventId)[shard],
+                holders(eventId + "/" + shard), userId, callback);
+    }
+
+    @Override
+    public void releaseHeldShardSeat(String eventId, int shard, String userId, Callback<Void> callback) {
+        if (holders(eventId + "/" + shard).remove(userId)) {
+            shards.get(eventId)[shard].decrementAndGet();
+        }
+        callback.onSuccess(null);
+    }
+
+    private void take(AtomicInteger counter, int capacity, Set<String> marks, String userId,
+                      Callback<Integer> callback) {
+        if (marks.contains(userId)) {
+            callback.onSuccess(counter.get());
+            return;
+        }
+        while (true) {
+            int current = counter.get();
+            if (current >= capacity) {
+                callback.onSuccess(SOLD_OUT);
+                return;
+            }
+            // Widen the race window like a network round trip would
+            Thread.yield();
+            if (counter.compareAndSet(current, current + 1)) {
+                marks.add(userId);
+                callback.onSuccess(current + 1);
+                return;
+            }
+            retries.incrementAndGet();
+        }
+    }
+
+    Set<String> holders(String counter) {
+        return holders.computeIfAbsent(counter, key -> ConcurrentHashMap.newKeySet());
+    }
+
+    @Override
+    public void commitReservation(Reservation reservation, boolean sharded, Callback<Void> callback) {
+        boolean fail;
+        synchronized (random) {
+            fail = random.nextDouble() < commitFailureRate;
+        }
+        if (fail) {
+            callback.onFailure("Simulated network error");
+            return;
+        }
+        String eventId = reservation.getEventId();
+        reservations.put(reservation.getReservationId(), reservation);
+        keys.put(BookingService.idempotencyKey(eventId, reservation.getUserId()),
+                reservation.getReservationId());
+        holders(sharded ? eventId + "/" + reservation.getSeatShard() : eventId)
+                .remove(reservation.getUserId());
+        eventBooked.get(eventId).incrementAndGet();
+        callback.onSuccess(null);
+    }
+
+    @Override
+    public void removeReservation(Reservation reservation, boolean sharded, Callback<Boolean> callback) {
+        String eventId = reservation.getEventId();
+        // Like the rules, the write only goes through while the reservation exists
+        if (reservations.remove(reservation.getReservationId()) == null) {
+            callback.onSuccess(false);
+            return;
+        }
+        keys.remove(BookingService.idempotencyKey(eventId, reservation.getUserId()));
+        if (sharded) {
+            shards.get(eventId)[reservation.getSeatShard()].decrementAndGet();
+        } else {
+            bookedSeats.get(eventId).decrementAndGet();
+        }
+        eventBooked.get(eventId).decrementAndGet();
+        callback.onSuccess(true);
+    }
+}
@@ -0,0 +1,118 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.stelandvag.unipicityvibes.data.SortedEventListTest.ids;
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+
+    @Test
+    public void tokenize_foldsCaseAccentsAndGreek() {
+        assertEquals(Arrays.asList("cafe", "ole"), SearchIndex.tokenize("Café Olé!"));
+        assertEquals(Arrays.asList("theatro"), SearchIndex.tokenize("Θέατρο"));
+        assertEquals(Arrays.asList("theatros"), SearchIndex.tokenize("ΘΕΑΤΡΟΣ"));
+        assertEquals(Arrays.asList("psari", "choros"), SearchIndex.tokenize("Ψάρι & Χορός"));
+        assertEquals(Arrays.asList("jazz", "sto", "limani", "2024"), SearchIndex.tokenize("Jazz στο Λιμάνι-2024"));
+        assertTrue(SearchIndex.tokenize(null).isEmpty());
+        assertTrue(SearchIndex.tokenize(" - ").isEmpty());
+    }
+
+    @Test
+    public void search_accentedAndUnaccentedGreek_findTheSameEvent() {
+        SearchIndex index = new SearchIndex();
+        index.add(event("theater", "Θέατρο στον Πειραιά", 100));
+
+        assertEquals(Arrays.asList("theater"), ids(index.search("θέατρο", 10)));
+        assertEquals(Arrays.asList("theater"), ids(index.search("θεατρο", 10)));
+        assertEquals(Arrays.asList("theater"), ids(index.search("ΘΕΑΤΡΟ", 10)));
+    }
+
+    @Test
+    public void search_greeklish_findsGreekText() {
+        SearchIndex index = new SearchIndex();
+        index.add(event("theater", "Θέατρο στον Πειραιά", 100));
+
+        assertEquals(Arrays.asList("theater"), ids(index.search("theatro", 10)));
+        assertEquals(Arrays.asList("theater"), ids(index.search("peiraia", 10)));
+    }
+
+    @Test
+    public void search_latinAccents_areIgnored() {
+        SearchIndex index = new SearchIndex();
+        index.add(event("cafe", "Café concert", 100));
+
+        assertEquals(Arrays.asList("cafe"), ids(index.search("cafe", 10)));
+        assertEquals(Arrays.asList("cafe"), ids(index.search("CAFÉ", 10)));
+    }
+
+    @Test
+    public void search_mixedScriptQuery_needsEveryWord() {
+        SearchIndex index = new SearchIndex();
+        index.add(event("harbour", "Jazz στο Λιμάνι", 100));
+        index.add(event("club", "Jazz club", 200));
+
+        assertEquals(Arrays.asList("harbour"), ids(index.search("jazz λιμάνι", 10)));
+        assertEquals(Arrays.asList("harbour"), ids(index.search("limani JAZZ", 10)));
+        assertEquals(Arrays.asList("harbour", "club"), ids(index.search("jazz", 10)));
+        assertTrue(index.search("jazz opera", 10).isEmpty());
+    }
+
+    @Test
+    public void search_prefixMatches_rankBelowWholeWords() {
+        SearchIndex index = new SearchIndex();
+        index.add(event("prefix", "Rockabilly night", 100));
+        index.add(event("word", "Rock night", 200));
+
+        assertEquals(Arrays.asList("word", "prefix"), ids(index.search("rock", 10)));
+        assertEquals(Arrays.asList("prefix"), ids(index.search("rocka", 10)));
+    }
+
+    @Test
+    public void search_titleHits_rankAboveDescriptionHits_tiesSoonestFirst() {
+        SearchIndex index = new SearchIndex();
+        Event inDescription = event("description", "Evening", 100);
+        inDescription.setDescription("Live jazz by the sea");
+        index.add(inDescription);
+        index.add(event("titleLate", "Jazz", 300));
+        index.add(event("titleEarly", "Jazz", 200));
+
+        assertEquals(Arrays.asList("titleEarly", "titleLate", "description"), ids(index.search("jazz", 10)));
+        assertEquals(Arrays.asList("titleEarly"), ids(index.search("jazz", 1)));
+    }
+
+    @Test
+    public void search_emptyOrPunctuationQuery_findsNothing() {
+        SearchIndex index = new SearchIndex();
+        index.add(event("a", "Jazz", 100));
+
+        assertEquals(Collections.emptyList(), index.search("", 10));
+        assertEquals(Collections.emptyList(), index.search("  ?! ", 10));
+    }
+
+    @Test
+    public void replaceAndRemove_updateThePostings() {
+        SearchIndex index = new SearchIndex();
+        Event old = event("a", "Jazz night", 100);
+        index.add(old);
+
+        Event renamed = event("a", "Blues night", 100);
+        index.replace(old, renamed);
+        assertTrue(index.search("jazz", 10).isEmpty());
+        assertEquals(Arrays.asList("a"), ids(index.search("blues", 10)));
+
+        index.remove(renamed);
+        assertTrue(index.search("night", 10).isEmpty());
+    }
+
+    private static Event event(String id, String title, long dateTime) {
+        Event event = SortedEventListTest.event(id, dateTime);
+        event.setTitle(title);
+        return event;
+    }
+}
@@ -0,0 +1,106 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SortedEventListTest {
+
+    @Test
+    public void equalTimestamps_areOrderedById() {
+        SortedEventList list = new SortedEventList(SortedEventList.BY_DATE);
+        list.add(event("c", 100));
+        list.add(event("a", 100));
+        list.add(event("b", 100));
+        list.add(event("z", 50));
+
+        assertEquals(Arrays.asList("z", "a", "b", "c"), ids(list.asList()));
+    }
+
+    @Test
+    public void addingTheSameEventTwice_keepsOneCopy() {
+        SortedEventList list = new SortedEventList(SortedEventList.BY_DATE);
+        list.add(event("a", 100));
+        list.add(event("a", 100));
+
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    public void remove_withEqualTimestamps_removesOnlyThatEvent() {
+        SortedEventList list = new SortedEventList(SortedEventList.BY_DATE);
+        list.add(event("a", 100));
+        list.add(event("b", 100));
+        list.add(event("c", 100));
+
+        list.remove(event("b", 100));
+
+        assertEquals(Arrays.asList("a", "c"), ids(list.asList()));
+    }
+
+    @Test
+    public void remove_unknownEvent_changesNothing() {
+        SortedEventList list = new SortedEventList(SortedEventList.BY_DATE);
+        list.add(event("a", 100));
+
+        list.remove(event("a", 200));
+        list.remove(event("b", 100));
+
+        assertEquals(Arrays.asList("a"), ids(list.asList()));
+    }
+
+    @Test
+    public void replace_movesTheEventToItsNewPosition() {
+        SortedEventList list = new SortedEventList(SortedEventList.BY_DATE);
+        Event a = event("a", 100);
+        list.add(a);
+        list.add(event("b", 200));
+        list.add(event("c", 300));
+
+        list.replace(a, event("a", 250));
+
+        assertEquals(Arrays.asList("b", "a", "c"), ids(list.asList()));
+    }
+
+    @Test
+    public void replace_withoutOldInstance_adds() {
+        SortedEventList list = new SortedEventList(SortedEventList.BY_DATE);
+        list.replace(null, event("a", 100));
+
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    public void lowerBound_landsOnTheFirstEventAtThatTime() {
+        SortedEventList list = new SortedEventList(SortedEventList.BY_DATE);
+        list.add(event("a", 100));
+        list.add(event("b", 200));
+        list.add(event("c", 200));
+        list.add(event("d", 300));
+
+        // An empty id sorts before every event at the same time
+        assertEquals(1, list.lowerBound(event("", 200)));
+        assertEquals(0, list.lowerBound(event("", 0)));
+        assertEquals(4, list.lowerBound(event("", 301)));
+    }
+
+    static Event event(String id, long dateTime) {
+        Event event = new Event();
+        event.setEventId(id);
+        event.setDateTime(dateTime);
+        return event;
+    }
+
+    static List<String> ids(List<Event> events) {
+        String[] ids = new String[events.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = events.get(i).getEventId();
+        }
+        return Arrays.asList(ids);
+    }
+}
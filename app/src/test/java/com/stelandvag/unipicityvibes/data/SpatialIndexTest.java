@@ -0,0 +1,159 @@
+package com.stelandvag.unipicityvibes.data;
+
+import com.stelandvag.unipicityvibes.models.Event;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SpatialIndexTest {
+
+    // Piraeus
+    private static final double LAT = 37.9420;
+    private static final double LNG = 23.6465;
+
+    @Test
+    public void withinRadius_findsEventsAcrossACellEdge() {
+        SpatialIndex index = new SpatialIndex();
+        // 37.95 is a cell edge, the two events are about 22 m apart in neighbouring cells
+        index.add(event("below", 37.9499, LNG));
+        index.add(event("above", 37.9501, LNG));
+
+        assertEquals(Arrays.asList("below", "above"), ids(index.withinRadius(37.9498, LNG, 100)));
+        assertEquals(Arrays.asList("above", "below"), ids(index.withinRadius(37.9502, LNG, 100)));
+    }
+
+    @Test
+    public void withinRadius_findsEventsAroundZero() {
+        SpatialIndex index = new SpatialIndex();
+        // Cells are floored, so the ones just below zero must not share a cell with the ones above
+        index.add(event("southWest", -0.0005, -0.0005));
+        index.add(event("northEast", 0.0005, 0.0005));
+
+        assertEquals(2, index.withinRadius(0, 0, 200).size());
+        assertEquals(Arrays.asList("southWest"), ids(index.withinRadius(-0.001, -0.001, 100)));
+    }
+
+    @Test
+    public void withinRadius_leavesOutEventsPastTheRadius_closestFirst() {
+        SpatialIndex index = new SpatialIndex();
+        index.add(event("far", LAT + 0.02, LNG));
+        index.add(event("near", LAT + 0.001, LNG));
+        index.add(event("here", LAT, LNG));
+
+        List<NearbyEvent> result = index.withinRadius(LAT, LNG, 1000);
+
+        assertEquals(Arrays.asList("here", "near"), ids(result));
+        assertEquals(0, result.get(0).distanceMeters, 0.01);
+        assertEquals(111, result.get(1).distanceMeters, 1);
+    }
+
+    @Test
+    public void nearest_returnsTheKClosestInOrder() {
+        SpatialIndex index = new SpatialIndex();
+        for (int i = 1; i <= 10; i++) {
+            // i * ~1.1 km north, a few rings of cells apart
+            index.add(event("e" + i, LAT + i * 0.01, LNG));
+        }
+
+        assertEquals(Arrays.asList("e1", "e2", "e3"), ids(index.nearest(LAT, LNG, 3)));
+        assertEquals(Arrays.asList("e10", "e9"), ids(index.nearest(LAT + 0.1, LNG, 2)));
+    }
+
+    @Test
+    public void nearest_withFewerEventsThanK_returnsAll() {
+        SpatialIndex index = new SpatialIndex();
+        index.add(event("a", LAT, LNG));
+        index.add(event("b", LAT + 0.05, LNG + 0.05));
+
+        assertEquals(Arrays.asList("a", "b"), ids(index.nearest(LAT, LNG, 5)));
+        assertTrue(new SpatialIndex().nearest(LAT, LNG, 5).isEmpty());
+    }
+
+    @Test
+    public void nearest_closerEventInTheNextRing_winsOverAFartherOneInTheSameRing() {
+        SpatialIndex index = new SpatialIndex();
+        // Same cell as the query but in its far corner, about 1.4 km away
+        index.add(event("sameCell", 37.9499, 23.6499));
+        // Next cell over, about 150 m away
+        index.add(event("nextCell", 37.9386, 23.6400));
+
+        assertEquals(Arrays.asList("nextCell"), ids(index.nearest(37.9400, 23.6401, 1)));
+    }
+
+    @Test
+    public void collectInBounds_includesTheEdges() {
+        SpatialIndex index = new SpatialIndex();
+        index.add(event("southWest", 37.90, 23.60));
+        index.add(event("northEast", 38.00, 23.70));
+        index.add(event("outside", 38.0001, 23.65));
+
+        List<Event> out = new ArrayList<>();
+        index.collectInBounds(37.90, 23.60, 38.00, 23.70, out);
+
+        assertEquals(Arrays.asList("northEast", "southWest"), sorted(SortedEventListTest.ids(out)));
+    }
+
+    @Test
+    public void collectInBounds_zoomedFarOut_walksTheOccupiedCells() {
+        SpatialIndex index = new SpatialIndex();
+        index.add(event("athens", LAT, LNG));
+        index.add(event("sydney", -33.87, 151.21));
+
+        List<Event> out = new ArrayList<>();
+        index.collectInBounds(0, 0, 80, 170, out);
+
+        assertEquals(1, out.size());
+        assertEquals("athens", out.get(0).getEventId());
+    }
+
+    @Test
+    public void replaceAndRemove_moveTheEventBetweenCells() {
+        SpatialIndex index = new SpatialIndex();
+        Event event = event("a", LAT, LNG);
+        index.add(event);
+
+        Event moved = event("a", LAT + 0.05, LNG);
+        index.replace(event, moved);
+        assertTrue(index.withinRadius(LAT, LNG, 100).isEmpty());
+        assertEquals(1, index.withinRadius(LAT + 0.05, LNG, 100).size());
+
+        index.remove(moved);
+        assertTrue(index.nearest(LAT, LNG, 1).isEmpty());
+    }
+
+    @Test
+    public void distanceMeters_matchesKnownDistances() {
+        assertEquals(0, SpatialIndex.distanceMeters(LAT, LNG, LAT, LNG), 0.0);
+        // One degree of latitude
+        assertEquals(111195, SpatialIndex.distanceMeters(0, 0, 1, 0), 10);
+        // One degree of longitude shrinks with the cosine of the latitude
+        assertEquals(55597, SpatialIndex.distanceMeters(60, 0, 60, 1), 10);
+    }
+
+    private static Event event(String id, double lat, double lng) {
+        Event event = SortedEventListTest.event(id, 0);
+        event.setLatitude(lat);
+        event.setLongitude(lng);
+        return event;
+    }
+
+    private static List<String> sorted(List<String> ids) {
+        List<String> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static List<String> ids(List<NearbyEvent> nearby) {
+        List<String> ids = new ArrayList<>();
+        for (NearbyEvent item : nearby) {
+            ids.add(item.event.getEventId());
+        }
+        return ids;
+    }
+}
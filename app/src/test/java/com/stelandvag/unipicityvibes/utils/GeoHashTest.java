@@ -0,0 +1,173 @@
+package com.stelandvag.unipicityvibes.utils;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class GeoHashTest {
+
+    // Piraeus
+    private static final double LAT = 37.9420;
+    private static final double LNG = 23.6465;
+
+    @Test
+    public void encode_matchesKnownHashes() {
+        assertEquals("ezs42", GeoHash.encode(42.6, -5.6, 5));
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+        assertEquals(GeoHash.DEFAULT_PRECISION, GeoHash.encode(LAT, LNG).length());
+    }
+
+    @Test
+    public void encode_shorterPrecision_isAPrefix() {
+        String full = GeoHash.encode(LAT, LNG, 9);
+        for (int precision = 1; precision < 9; precision++) {
+            assertEquals(full.substring(0, precision), GeoHash.encode(LAT, LNG, precision));
+        }
+    }
+
+    @Test
+    public void encode_handlesTheCornersOfTheWorld() {
+        assertEquals("00000", GeoHash.encode(-90, -180, 5));
+        assertEquals("zzzzz", GeoHash.encode(90, 180, 5));
+        assertEquals("s0000", GeoHash.encode(0, 0, 5));
+    }
+
+    @Test
+    public void range_coversEveryLongerHashOfTheCell() {
+        String cell = GeoHash.encode(LAT, LNG, 5);
+        String[] range = GeoHash.range(cell);
+        String inside = GeoHash.encode(LAT, LNG, 9);
+        String zs = cell + "zzzz";
+
+        assertTrue(inside.compareTo(range[0]) >= 0 && inside.compareTo(range[1]) <= 0);
+        assertTrue(zs.compareTo(range[1]) < 0);
+        // The next cell sorts after the end
+        String next = cell.substring(0, 4) + (char) (cell.charAt(4) + 1);
+        assertTrue(next.compareTo(range[1]) > 0);
+    }
+
+    @Test
+    public void precisionFor_cellsAreAtLeastTheRadius() {
+        assertEquals(GeoHash.DEFAULT_PRECISION, GeoHash.precisionFor(LAT, 1));
+        // Precision 5 cells are about 3.9 x 4.9 km at this latitude, precision 6 about 1 km
+        assertEquals(6, GeoHash.precisionFor(LAT, 500));
+        assertEquals(5, GeoHash.precisionFor(LAT, 3000));
+        assertEquals(1, GeoHash.precisionFor(LAT, 10_000_000));
+    }
+
+    @Test
+    public void coveringCells_containTheCentreAndPointsOnTheCircle() {
+        double radius = 2000;
+        Set<String> cells = GeoHash.coveringCells(LAT, LNG, radius);
+        int precision = GeoHash.precisionFor(LAT, radius);
+        double latSpan = radius / 111320.0;
+
+        assertTrue(cells.size() <= 9);
+        assertTrue(cells.contains(GeoHash.encode(LAT, LNG, precision)));
+        assertTrue(cells.contains(GeoHash.encode(LAT + latSpan, LNG, precision)));
+        assertTrue(cells.contains(GeoHash.encode(LAT - latSpan, LNG, precision)));
+    }
+
+    @Test
+    public void coveringCells_nearAPole_staysInRange() {
+        Set<String> cells = GeoHash.coveringCells(89.999, 0, 5000);
+
+        assertFalse(cells.isEmpty());
+        for (String cell : cells) {
+            assertTrue(cell, cell.startsWith("u") || cell.startsWith("g"));
+        }
+    }
+
+    @Test
+    public void coveringCells_acrossTheAntimeridian_includeBothSides() {
+        Set<String> cells = GeoHash.coveringCells(0, 179.999, 1000);
+        int precision = GeoHash.precisionFor(0, 1000);
+
+        assertTrue(cells.contains(GeoHash.encode(0, 179.999, precision)));
+        assertTrue(cells.contains(GeoHash.encode(0, -179.995, precision)));
+    }
+
+    @Test
+    public void queryRanges_oneRangePerCell() {
+        Set<String> cells = GeoHash.coveringCells(LAT, LNG, 1000);
+        List<String[]> ranges = GeoHash.queryRanges(LAT, LNG, 1000);
+
+        assertEquals(cells.size(), ranges.size());
+        for (String[] range : ranges) {
+            assertTrue(cells.contains(range[0]));
+        }
+    }
+
+    @Test
+    public void tileTimeKey_sortsByTileThenTime() {
+        String tile = GeoHash.encode(LAT, LNG, GeoHash.TILE_PRECISION);
+
+        assertEquals(tile + "_0000000000042", GeoHash.tileTimeKey(tile, 42));
+        // Zero padded, so string order is time order
+        assertTrue(GeoHash.tileTimeKey(tile, 9_000_000_000L)
+                .compareTo(GeoHash.tileTimeKey(tile, 10_000_000_000L)) < 0);
+        // Tiles have one length, a later tile sorts after every time of an earlier one
+        String next = tile.substring(0, 4) + (char) (tile.charAt(4) + 1);
+        assertTrue(GeoHash.tileTimeKey(tile, 9_999_999_999_999L)
+                .compareTo(GeoHash.tileTimeKey(next, 0)) < 0);
+        // Dates before 1970 clamp to zero instead of breaking the order with a minus sign
+        assertEquals(GeoHash.tileTimeKey(tile, 0), GeoHash.tileTimeKey(tile, -5));
+    }
+
+    @Test
+    public void tileRange_selectsOneTileFromTheGivenTimeOn() {
+        String tile = GeoHash.encode(LAT, LNG, GeoHash.TILE_PRECISION);
+        String[] range = GeoHash.tileRange(tile, 1000);
+
+        assertTrue(inRange(GeoHash.tileTimeKey(tile, 1000), range));
+        assertTrue(inRange(GeoHash.tileTimeKey(tile, 9_999_999_999_999L), range));
+        assertFalse(inRange(GeoHash.tileTimeKey(tile, 999), range));
+        String neighbour = tile.substring(0, 4) + (char) (tile.charAt(4) + 1);
+        assertFalse(inRange(GeoHash.tileTimeKey(neighbour, 1000), range));
+    }
+
+    @Test
+    public void cellsInBounds_coversTheBox() {
+        Set<String> cells = GeoHash.cellsInBounds(37.90, 23.60, 38.00, 23.75, GeoHash.TILE_PRECISION, 50);
+
+        assertNotNull(cells);
+        assertTrue(cells.contains(GeoHash.encode(37.90, 23.60, GeoHash.TILE_PRECISION)));
+        assertTrue(cells.contains(GeoHash.encode(38.00, 23.75, GeoHash.TILE_PRECISION)));
+        assertTrue(cells.contains(GeoHash.encode(LAT, LNG, GeoHash.TILE_PRECISION)));
+        for (String cell : cells) {
+            assertEquals(GeoHash.TILE_PRECISION, cell.length());
+        }
+    }
+
+    @Test
+    public void cellsInBounds_tooManyCells_isNull() {
+        assertNull(GeoHash.cellsInBounds(30, 10, 45, 30, GeoHash.TILE_PRECISION, 50));
+    }
+
+    @Test
+    public void cellsInBounds_acrossTheAntimeridian_includeBothSides() {
+        Set<String> cells = GeoHash.cellsInBounds(-1, 179.9, 1, -179.9, 4, 100);
+
+        assertNotNull(cells);
+        assertTrue(cells.contains(GeoHash.encode(0, 179.95, 4)));
+        assertTrue(cells.contains(GeoHash.encode(0, -179.95, 4)));
+    }
+
+    @Test
+    public void cellsInBounds_atThePole_staysInRange() {
+        Set<String> cells = GeoHash.cellsInBounds(89.9, -0.1, 90, 0.1, 4, 100);
+
+        assertNotNull(cells);
+        assertTrue(cells.contains(GeoHash.encode(90, 0, 4)));
+        for (String cell : cells) {
+            assertEquals(4, cell.length());
+        }
+    }
+
+    private static boolean inRange(String key, String[] range) {
+        return key.compareTo(range[0]) >= 0 && key.compareTo(range[1]) <= 0;
+    }
+}